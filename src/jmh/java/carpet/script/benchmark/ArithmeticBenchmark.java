@@ -0,0 +1,56 @@
+package carpet.script.benchmark;
+
+import carpet.script.Expression;
+import carpet.script.value.Value;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Number crunching in tight loops, mostly exercising operators and {@link carpet.script.value.NumericValue}
+ */
+public class ArithmeticBenchmark extends ScriptBenchmark
+{
+    private final Expression integers = new Expression("integers(10000)");
+    private final Expression doubles = new Expression("doubles(10000)");
+    private final Expression mixed = new Expression("mixed(10000)");
+
+    @Override
+    protected String code()
+    {
+        return """
+                integers(n) -> (
+                    total = 0;
+                    loop(n, total += _ * 3 - _ % 7 + (_ - 1) * 2);
+                    total
+                );
+                doubles(n) -> (
+                    total = 0.0;
+                    loop(n, total += sqrt(_) * 0.5 + _ / 3);
+                    total
+                );
+                mixed(n) -> (
+                    total = 0;
+                    c_for(i = 0, i < n, i += 1, if (i % 2 == 0, total += i / 2, total -= i * 1.5));
+                    total
+                );
+                """;
+    }
+
+    @Benchmark
+    public Value integers()
+    {
+        return evaluate(integers);
+    }
+
+    @Benchmark
+    public Value doubles()
+    {
+        return evaluate(doubles);
+    }
+
+    @Benchmark
+    public Value mixed()
+    {
+        return evaluate(mixed);
+    }
+}
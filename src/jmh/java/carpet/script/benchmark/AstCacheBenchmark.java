@@ -0,0 +1,144 @@
+package carpet.script.benchmark;
+
+import carpet.script.Context;
+import carpet.script.Expression;
+import carpet.script.Module;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading an app by parsing its code, and from the AST cache. Setup checks that the app loaded from the cache
+ * gives the same results as the parsed one, and that each load mode has its own cache file. {@link ScriptChecks}
+ * runs that check as part of the build.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class AstCacheBenchmark
+{
+    private static final Module APP = new Module("cache_check", """
+            // constants of all types the cache stores
+            global_settings = {'name' -> 'cache check', 'ratio' -> 0.25, 'sizes' -> [1, 2, 3], 'flag' -> true, 'none' -> null};
+            global_calls = 0;
+            shapes(n) -> (
+                global_calls += 1;
+                result = [];
+                c_for(i = 0, i < n, i += 1,
+                    if (i % 3 == 0, result += i * global_settings:'ratio' + 2 * 3,
+                        i % 3 == 1, result += str('%d-%s', i, global_settings:'name'),
+                        result += {'key' -> i, 'other' -> [1, 2, 3]}
+                    )
+                );
+                result
+            );
+            text(n) -> join(',', map(range(n), replace('item_' + _, '\\\\d', 'x')));
+            sum_down(n, acc) -> if (n == 0, acc, sum_down(n - 1, acc + n));
+            sorted(n) -> sort_key(range(n), -_ % 7);
+            calls() -> global_calls;
+            """, false);
+    private static final List<String> CALLS = List.of("shapes(20)", "text(15)", "sum_down(1000, 0)", "sorted(30)", "global_settings", "calls()");
+
+    @Param({"DEFAULT", "OPTIMIZED", "DIRECT"})
+    public Expression.LoadOverride mode;
+
+    private Path resources;
+
+    @Setup
+    public void fillCache() throws IOException
+    {
+        resources = Files.createTempDirectory("scarpet_ast_cache");
+        List<String> parsed = run(false);
+        Path file = resources.resolve("ast_cache/" + APP.name() + (mode == Expression.LoadOverride.DEFAULT ? ".default" : ".optimized") + ".ast");
+        if (!Files.isRegularFile(file))
+        {
+            throw new IllegalStateException("Cache file " + file + " was not written");
+        }
+        List<String> cached = run(true);
+        if (!parsed.equals(cached))
+        {
+            throw new IllegalStateException("Cached app gives " + cached + " instead of " + parsed);
+        }
+    }
+
+    @TearDown
+    public void deleteCache() throws IOException
+    {
+        try (Stream<Path> files = Files.walk(resources))
+        {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList())
+            {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * @return results of calls to the loaded app
+     */
+    private List<String> run(boolean fromCache)
+    {
+        List<String> log = new ArrayList<>();
+        BenchmarkScriptHost host = load(resources, log::add);
+        boolean loaded = log.stream().anyMatch(line -> line.startsWith("Loaded code of"));
+        if (loaded != fromCache)
+        {
+            throw new IllegalStateException(fromCache ? "App was not loaded from the cache" : "App was loaded from the cache before it was stored");
+        }
+        List<String> results = new ArrayList<>();
+        for (String call : CALLS)
+        {
+            Expression expression = new Expression(call);
+            expression.asAModule(APP);
+            results.add(expression.executeAndEvaluate(new Context(host), false, mode, null).getLeft().getString());
+        }
+        return results;
+    }
+
+    private BenchmarkScriptHost load(@Nullable Path resources, @Nullable Consumer<String> logger)
+    {
+        BenchmarkScriptHost host = new BenchmarkScriptHost(mode, APP, resources);
+        Expression app = new Expression(APP.code());
+        app.asATextSource();
+        app.asAModule(APP);
+        app.executeAndEvaluate(new Context(host), false, mode, logger);
+        return host;
+    }
+
+    @Benchmark
+    public BenchmarkScriptHost parse()
+    {
+        return load(null, null);
+    }
+
+    @Benchmark
+    public BenchmarkScriptHost loadCached()
+    {
+        return load(resources, null);
+    }
+}
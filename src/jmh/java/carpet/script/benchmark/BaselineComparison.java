@@ -0,0 +1,103 @@
+package carpet.script.benchmark;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares JMH results with the stored baseline and fails if any benchmark got slower by more than the tolerance,
+ * or has no baseline score to compare with, so a missing or outdated baseline can't pass as no regressions.
+ * No baseline is checked in, it has to be recorded with {@code ./gradlew jmh jmhBaseline} on the reference tree.
+ * Arguments: baseline file, results file, tolerance as a fraction of the baseline score.
+ */
+public class BaselineComparison
+{
+    private record Score(String mode, double score, String unit)
+    {
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        Map<String, Score> baseline = read(Path.of(args[0]));
+        Map<String, Score> results = read(Path.of(args[1]));
+        double tolerance = Double.parseDouble(args[2]);
+        if (results.isEmpty())
+        {
+            System.out.println("No benchmark results in " + args[1] + ", run './gradlew jmh' first");
+            System.exit(1);
+        }
+        if (baseline.isEmpty())
+        {
+            System.out.println("No baseline recorded in " + args[0] + ", record it with './gradlew jmh jmhBaseline' on the reference tree");
+            System.exit(1);
+        }
+        int regressions = 0;
+        int missing = 0;
+        for (Map.Entry<String, Score> entry : results.entrySet())
+        {
+            Score current = entry.getValue();
+            Score reference = baseline.get(entry.getKey());
+            if (reference == null || !reference.unit().equals(current.unit()))
+            {
+                missing++;
+                System.out.printf("%-90s %12.3f %s NO BASELINE%n", entry.getKey(), current.score(), current.unit());
+                continue;
+            }
+            // throughput grows when things get faster, all other modes measure time
+            double change = current.mode().equals("thrpt")
+                    ? reference.score() / current.score() - 1
+                    : current.score() / reference.score() - 1;
+            boolean regressed = change > tolerance;
+            if (regressed)
+            {
+                regressions++;
+            }
+            System.out.printf("%-90s %12.3f %s %+7.1f%%%s%n", entry.getKey(), current.score(), current.unit(), change * 100, regressed ? " REGRESSION" : "");
+        }
+        if (missing > 0)
+        {
+            System.out.println(missing + " benchmark(s) missing from the baseline, record it again with './gradlew jmh jmhBaseline'");
+        }
+        if (regressions > 0)
+        {
+            System.out.println(regressions + " benchmark(s) slower than the baseline by more than " + tolerance * 100 + "%");
+        }
+        if (missing > 0 || regressions > 0)
+        {
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Score> read(Path file) throws IOException
+    {
+        Map<String, Score> scores = new LinkedHashMap<>();
+        if (!Files.exists(file))
+        {
+            return scores;
+        }
+        JsonArray runs = JsonParser.parseString(Files.readString(file, StandardCharsets.UTF_8)).getAsJsonArray();
+        for (JsonElement element : runs)
+        {
+            JsonObject run = element.getAsJsonObject();
+            StringBuilder key = new StringBuilder(run.get("benchmark").getAsString());
+            if (run.has("params"))
+            {
+                Map<String, String> params = new TreeMap<>();
+                run.getAsJsonObject("params").entrySet().forEach(e -> params.put(e.getKey(), e.getValue().getAsString()));
+                key.append(params);
+            }
+            JsonObject metric = run.getAsJsonObject("primaryMetric");
+            scores.put(key.toString(), new Score(run.get("mode").getAsString(), metric.get("score").getAsDouble(), metric.get("scoreUnit").getAsString()));
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,74 @@
+package carpet.script.benchmark;
+
+import carpet.script.Context;
+import carpet.script.Expression;
+import carpet.script.Module;
+import carpet.script.ScriptHost;
+import carpet.script.ScriptServer;
+import carpet.script.exception.InternalExpressionException;
+
+import java.nio.file.Path;
+
+import javax.annotation.Nullable;
+
+/**
+ * Script host that runs the language core without a Minecraft server. Apps can't import other modules
+ * nor access files.
+ */
+public class BenchmarkScriptHost extends ScriptHost
+{
+    public static class Server extends ScriptServer
+    {
+        @Nullable
+        private final Path resources;
+
+        public Server(@Nullable Path resources)
+        {
+            this.resources = resources;
+        }
+
+        @Override
+        public Path resolveResource(String suffix)
+        {
+            return resources == null ? null : resources.resolve(suffix);
+        }
+
+        @Override
+        public String getVersion()
+        {
+            return "benchmark";
+        }
+    }
+
+    public BenchmarkScriptHost(Expression.LoadOverride loadOverride)
+    {
+        this(loadOverride, null, null);
+    }
+
+    /**
+     * @param main module of the app, its code needs to be run separately
+     * @param resources folder for files of the scripting engine, like the AST cache, or null to not store any
+     */
+    public BenchmarkScriptHost(Expression.LoadOverride loadOverride, @Nullable Module main, @Nullable Path resources)
+    {
+        super(main, new Server(resources), false, null, loadOverride);
+    }
+
+    @Override
+    protected Module getModuleOrLibraryByName(String name)
+    {
+        throw new InternalExpressionException("Modules are not available in benchmarks");
+    }
+
+    @Override
+    protected void runModuleCode(Context c, Module module)
+    {
+        throw new InternalExpressionException("Modules are not available in benchmarks");
+    }
+
+    @Override
+    protected ScriptHost duplicate()
+    {
+        return new BenchmarkScriptHost(loadOverrides, main, ((Server) scriptServer()).resources);
+    }
+}
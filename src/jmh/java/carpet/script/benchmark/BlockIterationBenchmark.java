@@ -0,0 +1,97 @@
+package carpet.script.benchmark;
+
+import carpet.script.Expression;
+import carpet.script.api.BlockIterators;
+import carpet.script.value.BlockValue;
+import carpet.script.value.NumericValue;
+import carpet.script.value.Value;
+
+import net.minecraft.SharedConstants;
+import net.minecraft.core.BlockPos;
+import net.minecraft.server.Bootstrap;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Evaluation of the expression of volume and scan for each block of a 32x32x32 box, binding _x, _y, _z and _
+ * the same way they do, but with blocks that are not in a world, so these measure allocations and time spent
+ * on the loop variables rather than on reading the world. Run these with the gc profiler.
+ */
+public class BlockIterationBenchmark extends ScriptBenchmark
+{
+    private static final int SIZE = 32;
+    private static final BlockState STONE;
+
+    static
+    {
+        SharedConstants.tryDetectVersion();
+        Bootstrap.bootStrap();
+        STONE = Blocks.STONE.defaultBlockState();
+    }
+
+    private final Expression unused = box("box(null)");
+    private final Expression coordinates = box("box(_x + _z > _y)");
+    private final Expression blocks = box("box(_ == 'stone')");
+
+    @Override
+    protected String code()
+    {
+        return "null";
+    }
+
+    /**
+     * Adds box(expr) to the expression, which evaluates expr for each block of the box like volume does
+     */
+    private static Expression box(String code)
+    {
+        Expression expression = new Expression(code);
+        expression.addLazyFunction("box", 1, (c, t, lv) ->
+        {
+            BlockIterators.BlockIteration iteration = new BlockIterators.BlockIteration(c, t, lv.get(0));
+            try
+            {
+                outer:
+                for (int y = 0; y < SIZE; y++)
+                {
+                    for (int x = 0; x < SIZE; x++)
+                    {
+                        for (int z = 0; z < SIZE; z++)
+                        {
+                            if (!iteration.visit(x, y, z, new BlockValue(STONE, null, new BlockPos(x, y, z))))
+                            {
+                                break outer;
+                            }
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                iteration.restore();
+            }
+            Value count = new NumericValue(iteration.count());
+            return (cc, tt) -> count;
+        });
+        return expression;
+    }
+
+    @Benchmark
+    public Value unused()
+    {
+        return evaluate(unused);
+    }
+
+    @Benchmark
+    public Value coordinates()
+    {
+        return evaluate(coordinates);
+    }
+
+    @Benchmark
+    public Value blocks()
+    {
+        return evaluate(blocks);
+    }
+}
@@ -0,0 +1,79 @@
+package carpet.script.benchmark;
+
+import carpet.script.Expression;
+import carpet.script.value.Value;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Building, reading and copying lists and maps
+ */
+public class CollectionsBenchmark extends ScriptBenchmark
+{
+    private final Expression listAppend = new Expression("list_append(10000)");
+    private final Expression mapPutGet = new Expression("map_put_get(10000)");
+    private final Expression copyState = new Expression("copy_state(100)");
+    private final Expression vectors = new Expression("vectors(10000)");
+    private final Expression sortKey = new Expression("sort_by_key(5000)");
+
+    @Override
+    protected String code()
+    {
+        return """
+                global_state = {};
+                loop(20000, global_state:_ = str(_));
+                list_append(n) -> (
+                    list = [];
+                    loop(n, list += _);
+                    reduce(list, _a + _, 0)
+                );
+                map_put_get(n) -> (
+                    map = {};
+                    loop(n, map:_ = _ * 2);
+                    sum = 0;
+                    for(keys(map), sum += map:_);
+                    sum
+                );
+                copy_state(n) -> (
+                    loop(n, state = copy(global_state); put(state, _, 'changed'));
+                    length(state)
+                );
+                vectors(n) -> (
+                    position = [0, 0, 0];
+                    loop(n, position = position + [1, 2, 3] * 0.5);
+                    position
+                );
+                sort_by_key(n) -> sort_key(map(range(n), (_ * 7919) % n), str(_));
+                """;
+    }
+
+    @Benchmark
+    public Value listAppend()
+    {
+        return evaluate(listAppend);
+    }
+
+    @Benchmark
+    public Value mapPutGet()
+    {
+        return evaluate(mapPutGet);
+    }
+
+    @Benchmark
+    public Value copyState()
+    {
+        return evaluate(copyState);
+    }
+
+    @Benchmark
+    public Value vectors()
+    {
+        return evaluate(vectors);
+    }
+
+    @Benchmark
+    public Value sortKey()
+    {
+        return evaluate(sortKey);
+    }
+}
@@ -0,0 +1,63 @@
+package carpet.script.benchmark;
+
+import carpet.script.Expression;
+import carpet.script.value.Value;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Calls of user defined functions, lambdas and recursion
+ */
+public class FunctionCallBenchmark extends ScriptBenchmark
+{
+    private final Expression calls = new Expression("calls(10000)");
+    private final Expression lambdas = new Expression("lambdas(10000)");
+    private final Expression recursion = new Expression("fib(18)");
+    private final Expression tailRecursion = new Expression("count_down(1000, 0)");
+
+    @Override
+    protected String code()
+    {
+        return """
+                add(a, b) -> a + b;
+                calls(n) -> (
+                    sum = 0;
+                    loop(n, sum = add(sum, _));
+                    sum
+                );
+                lambdas(n) -> (
+                    scale = 3;
+                    f = _(x, outer(scale)) -> x * scale;
+                    sum = 0;
+                    loop(n, sum += call(f, _));
+                    sum
+                );
+                fib(n) -> if (n < 2, n, fib(n - 1) + fib(n - 2));
+                count_down(n, acc) -> if (n == 0, acc, count_down(n - 1, acc + n));
+                """;
+    }
+
+    @Benchmark
+    public Value calls()
+    {
+        return evaluate(calls);
+    }
+
+    @Benchmark
+    public Value lambdas()
+    {
+        return evaluate(lambdas);
+    }
+
+    @Benchmark
+    public Value recursion()
+    {
+        return evaluate(recursion);
+    }
+
+    @Benchmark
+    public Value tailRecursion()
+    {
+        return evaluate(tailRecursion);
+    }
+}
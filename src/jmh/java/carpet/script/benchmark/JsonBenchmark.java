@@ -0,0 +1,142 @@
+package carpet.script.benchmark;
+
+import carpet.script.Expression;
+import carpet.script.Module;
+import carpet.script.argument.FileArgument;
+import carpet.script.utils.ScarpetJsonDeserializer;
+import carpet.script.utils.ScarpetJsonStream;
+import carpet.script.value.ListValue;
+import carpet.script.value.MapValue;
+import carpet.script.value.NumericValue;
+import carpet.script.value.StringValue;
+import carpet.script.value.Value;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParser;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding and decoding a few megabytes of json, streamed with {@link ScarpetJsonStream}, and through a tree
+ * of json elements, the way encode_json and decode_json used to do it. Run these with the gc profiler to compare
+ * allocations of both. Setup checks that the data survives a round trip and that both give the same results.
+ * {@link ScriptChecks} runs that check, and the check of json files, as part of the build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class JsonBenchmark
+{
+    private static final int ENTRIES = 20_000;
+
+    private Value data;
+    private String json;
+
+    @Setup
+    public void createData()
+    {
+        List<Value> entries = new ArrayList<>(ENTRIES);
+        for (int i = 0; i < ENTRIES; i++)
+        {
+            Map<Value, Value> entry = new HashMap<>();
+            entry.put(StringValue.of("id"), NumericValue.of(i));
+            entry.put(StringValue.of("name"), StringValue.of("entry \"" + i + "\"\n\té"));
+            entry.put(StringValue.of("scale"), new NumericValue(i / 7.0));
+            entry.put(StringValue.of("big"), NumericValue.of(Long.MAX_VALUE - i));
+            entry.put(StringValue.of("flag"), i % 2 == 0 ? Value.TRUE : Value.FALSE);
+            entry.put(StringValue.of("missing"), Value.NULL);
+            entry.put(StringValue.of("tags"), ListValue.wrap(List.of(StringValue.of("a" + i), StringValue.of("b"), NumericValue.of(-i))));
+            entry.put(StringValue.of("nested"), MapValue.wrap(new HashMap<>(Map.of(StringValue.of("depth"), ListValue.wrap(List.of(ListValue.wrap(List.of(NumericValue.of(i)))))))));
+            entries.add(MapValue.wrap(entry));
+        }
+        data = ListValue.wrap(entries);
+        json = ScarpetJsonStream.encode(data);
+        check(json.length() > 2_000_000, "data is only " + json.length() + " characters long");
+        check(json.equals(data.toJson().toString()), "streamed json differs from json of the tree");
+        Value decoded = ScarpetJsonStream.decode(json);
+        check(decoded.equals(decodeTree()), "streamed values differ from values of the tree");
+        check(ScarpetJsonStream.encode(decoded).equals(json), "values changed in a round trip");
+    }
+
+    /**
+     * Checks that a json file written for write_file is the same as gson's pretty printing of the json tree, which
+     * writes NaN and infinities as they are, that reading it gives the same values as parsing that text into a tree,
+     * and that it doesn't leave a temporary file behind
+     */
+    public void checkFile(Path folder) throws IOException
+    {
+        Module module = new Module("json_check", "", false);
+        BenchmarkScriptHost host = new BenchmarkScriptHost(Expression.LoadOverride.DEFAULT, module, folder);
+        Value value = ListValue.of(data, new NumericValue(Double.NaN), new NumericValue(Double.POSITIVE_INFINITY), new NumericValue(Double.NEGATIVE_INFINITY));
+        FileArgument file = new FileArgument("data", FileArgument.Type.JSON, null, false, false, FileArgument.Reason.CREATE, host);
+        // second write replaces the first one
+        check(file.writeJsonFile(module, ListValue.of()), "json file was not written");
+        check(file.writeJsonFile(module, value), "json file was not written");
+        Path written;
+        try (Stream<Path> files = Files.walk(folder))
+        {
+            List<Path> all = files.filter(Files::isRegularFile).toList();
+            check(all.size() == 1, "expected a single file, found " + all);
+            written = all.get(0);
+        }
+        String text = Files.readString(written, StandardCharsets.UTF_8);
+        check(text.equals(new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(value.toJson())), "json file differs from pretty printed json of the tree");
+        Value read = file.readJsonFile(module);
+        check(read != null && read.equals(new ScarpetJsonDeserializer().deserialize(JsonParser.parseString(text), Value.class, null)), "json file reads differently than its tree");
+    }
+
+    private static void check(boolean condition, String message)
+    {
+        if (!condition)
+        {
+            throw new IllegalStateException(message);
+        }
+    }
+
+    @Benchmark
+    public String encodeStream()
+    {
+        return ScarpetJsonStream.encode(data);
+    }
+
+    @Benchmark
+    public String encodeTree()
+    {
+        return data.toJson().toString();
+    }
+
+    @Benchmark
+    public Value decodeStream()
+    {
+        return ScarpetJsonStream.decode(json);
+    }
+
+    @Benchmark
+    public Value decodeTree()
+    {
+        return new ScarpetJsonDeserializer().deserialize(JsonParser.parseString(json), Value.class, null);
+    }
+}
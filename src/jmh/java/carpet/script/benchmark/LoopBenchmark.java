@@ -0,0 +1,74 @@
+package carpet.script.benchmark;
+
+import carpet.script.Expression;
+import carpet.script.value.Value;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Built-in loops and higher order functions, where most of the allocations come from binding
+ * the loop variables, so run these with the gc profiler to see allocations per operation
+ */
+public class LoopBenchmark extends ScriptBenchmark
+{
+    static final int ITERATIONS = 100_000;
+
+    private final Expression loop = new Expression("loop_counter(" + ITERATIONS + ")");
+    private final Expression idleLoop = new Expression("idle_loop(" + ITERATIONS + ")");
+    private final Expression forEach = new Expression("for_each(" + ITERATIONS + ")");
+    private final Expression mapFilter = new Expression("map_filter(" + ITERATIONS + ")");
+    private final Expression whileLoop = new Expression("while_loop(" + ITERATIONS + ")");
+
+    @Override
+    protected String code()
+    {
+        return """
+                loop_counter(n) -> (
+                    count = 0;
+                    loop(n, if (_ % 2, count += 1));
+                    count
+                );
+                idle_loop(n) -> loop(n, null);
+                for_each(n) -> for(range(n), _ % 3 == 0);
+                map_filter(n) -> length(filter(map(range(n), _ * 2), _ % 3 == 0));
+                while_loop(n) -> (
+                    count = 0;
+                    while (count < n, n, count += 1);
+                    count
+                );
+                """;
+    }
+
+    @Benchmark
+    public Value loop()
+    {
+        return evaluate(loop);
+    }
+
+    /**
+     * A loop that never reads its counter, so binding it shouldn't allocate at all
+     */
+    @Benchmark
+    public Value idleLoop()
+    {
+        return evaluate(idleLoop);
+    }
+
+    @Benchmark
+    public Value forEach()
+    {
+        return evaluate(forEach);
+    }
+
+    @Benchmark
+    public Value mapFilter()
+    {
+        return evaluate(mapFilter);
+    }
+
+    @Benchmark
+    public Value whileLoop()
+    {
+        return evaluate(whileLoop);
+    }
+}
@@ -0,0 +1,70 @@
+package carpet.script.benchmark;
+
+import carpet.script.Context;
+import carpet.script.Expression;
+import carpet.script.Token;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Tokenizing and parsing of a large app, with and without the optimization passes
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ParsingBenchmark
+{
+    @Param({"canonical", "optimized"})
+    public String style;
+
+    @Param({"200"})
+    public int functions;
+
+    private String code;
+    private Context context;
+
+    @Setup
+    public void generateApp()
+    {
+        StringBuilder builder = new StringBuilder("global_counter = 0;\n");
+        for (int i = 0; i < functions; i++)
+        {
+            builder.append("// function number ").append(i).append('\n');
+            builder.append("function_").append(i).append("(a, b, outer(global_counter)) -> (\n");
+            builder.append("    result = [];\n");
+            builder.append("    c_for(i = 0, i < a, i += 1,\n");
+            builder.append("        if (i % 3 == 0, result += i * b + 2 * 3,\n");
+            builder.append("            i % 3 == 1, result += str('%d-%s', i, 'value'),\n");
+            builder.append("            result += {'key' -> i, 'other' -> [1, 2, 3]}\n");
+            builder.append("        )\n");
+            builder.append("    );\n");
+            builder.append("    global_counter += length(result);\n");
+            builder.append("    return(reduce(result, _a + length(str(_)), 0))\n");
+            builder.append(");\n");
+        }
+        code = builder.toString();
+        context = new Context(new BenchmarkScriptHost(Expression.LoadOverride.DEFAULT));
+    }
+
+    @Benchmark
+    public List<Token> parse()
+    {
+        return new Expression(code).explain(context, code, null, style);
+    }
+}
@@ -0,0 +1,56 @@
+package carpet.script.benchmark;
+
+import carpet.script.Context;
+import carpet.script.Expression;
+import carpet.script.value.Value;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Base of benchmarks running scarpet code. Each benchmark defines its functions in {@link #code()}, which is
+ * loaded once, and then measures calls to these functions in each of the load modes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public abstract class ScriptBenchmark
+{
+    @Param({"DEFAULT", "OPTIMIZED", "DIRECT"})
+    public Expression.LoadOverride mode;
+
+    protected BenchmarkScriptHost host;
+
+    /**
+     * @return code of the app, defining the functions called by the benchmarks
+     */
+    protected abstract String code();
+
+    @Setup
+    public void loadApp()
+    {
+        host = new BenchmarkScriptHost(mode);
+        evaluate(new Expression(code()));
+    }
+
+    /**
+     * Runs the expression in a fresh context. Expressions are parsed on their first run, in the current load mode
+     */
+    protected Value evaluate(Expression expression)
+    {
+        return expression.executeAndEvaluate(new Context(host), false, mode, null).getLeft();
+    }
+}
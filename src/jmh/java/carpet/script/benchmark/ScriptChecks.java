@@ -0,0 +1,128 @@
+package carpet.script.benchmark;
+
+import carpet.script.Expression;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Runs the checks of the benchmarks once, in each load mode where it matters, without timing anything, so they are
+ * part of {@code ./gradlew check}. Fails with the first result that is wrong.
+ */
+public class ScriptChecks
+{
+    /**
+     * Stack of the thread running the checks. A million calls would need far more than that if each of them used
+     * a Java frame, so tail calls only pass if they run in constant stack.
+     */
+    private static final long STACK_SIZE = 512 * 1024;
+    /**
+     * Bytes per iteration of a loop that doesn't read its counter, leaving room for the fixed cost of the call
+     */
+    private static final double MAX_IDLE_LOOP_ALLOCATION = 8;
+
+    public static void main(String[] args) throws InterruptedException
+    {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread checks = new Thread(null, () ->
+        {
+            try
+            {
+                json();
+                for (Expression.LoadOverride mode : new Expression.LoadOverride[]{Expression.LoadOverride.DEFAULT, Expression.LoadOverride.OPTIMIZED, Expression.LoadOverride.DIRECT})
+                {
+                    tailCalls(mode);
+                    loopAllocations(mode);
+                    astCache(mode);
+                    System.out.println("Checked " + mode);
+                }
+            }
+            catch (Throwable e)
+            {
+                failure.set(e);
+            }
+        }, "Scarpet checks", STACK_SIZE);
+        checks.start();
+        checks.join();
+        if (failure.get() != null)
+        {
+            failure.get().printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Loops update their counter in place and only create its value when it is read, so a loop that never reads it
+     * shouldn't allocate anything per iteration. A value and a binding per iteration would take 40 bytes or more.
+     */
+    private static void loopAllocations(Expression.LoadOverride mode)
+    {
+        LoopBenchmark benchmark = new LoopBenchmark();
+        benchmark.mode = mode;
+        benchmark.loadApp();
+        // the first run parses the call
+        benchmark.idleLoop();
+        ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        benchmark.idleLoop();
+        double perIteration = (double) (threads.getCurrentThreadAllocatedBytes() - before) / LoopBenchmark.ITERATIONS;
+        System.out.printf("Idle loop in %s allocates %.2f bytes per iteration%n", mode, perIteration);
+        if (perIteration >= MAX_IDLE_LOOP_ALLOCATION)
+        {
+            throw new IllegalStateException("Idle loop allocates " + perIteration + " bytes per iteration");
+        }
+    }
+
+    private static void astCache(Expression.LoadOverride mode) throws IOException
+    {
+        AstCacheBenchmark benchmark = new AstCacheBenchmark();
+        benchmark.mode = mode;
+        try
+        {
+            benchmark.fillCache();
+        }
+        finally
+        {
+            benchmark.deleteCache();
+        }
+    }
+
+    private static void json() throws IOException
+    {
+        JsonBenchmark benchmark = new JsonBenchmark();
+        benchmark.createData();
+        Path folder = Files.createTempDirectory("scarpet_json");
+        try
+        {
+            benchmark.checkFile(folder);
+        }
+        finally
+        {
+            try (Stream<Path> files = Files.walk(folder))
+            {
+                for (Path path : files.sorted(Comparator.reverseOrder()).toList())
+                {
+                    Files.delete(path);
+                }
+            }
+        }
+        System.out.println("Checked json");
+    }
+
+    private static void tailCalls(Expression.LoadOverride mode)
+    {
+        TailCallBenchmark benchmark = new TailCallBenchmark();
+        benchmark.mode = mode;
+        benchmark.loadApp();
+        benchmark.recursion();
+        benchmark.mutualRecursion();
+        benchmark.returnRecursion();
+    }
+}
@@ -0,0 +1,64 @@
+package carpet.script.benchmark;
+
+import carpet.script.Expression;
+import carpet.script.value.Value;
+
+import org.openjdk.jmh.annotations.Benchmark;
+
+/**
+ * Building and processing strings
+ */
+public class StringBenchmark extends ScriptBenchmark
+{
+    private final Expression concatenation = new Expression("concatenation(2000)");
+    private final Expression formatting = new Expression("formatting(2000)");
+    private final Expression regex = new Expression("regex(2000)");
+    private final Expression json = new Expression("json(2000)");
+
+    @Override
+    protected String code()
+    {
+        return """
+                concatenation(n) -> (
+                    text = '';
+                    loop(n, text += str(_) + ',');
+                    length(text)
+                );
+                formatting(n) -> length(join(',', map(range(n), str('%d:%s', _, _ * 2))));
+                regex(n) -> (
+                    count = 0;
+                    loop(n, if ('item_' + _ ~ '_\\\\d+5$', count += 1); replace('a1b2c3' + _, '\\\\d', 'x'));
+                    count
+                );
+                json(n) -> (
+                    data = {};
+                    loop(n, data:str(_) = [_, str(_), {'nested' -> _}]);
+                    length(decode_json(encode_json(data)))
+                );
+                """;
+    }
+
+    @Benchmark
+    public Value concatenation()
+    {
+        return evaluate(concatenation);
+    }
+
+    @Benchmark
+    public Value formatting()
+    {
+        return evaluate(formatting);
+    }
+
+    @Benchmark
+    public Value regex()
+    {
+        return evaluate(regex);
+    }
+
+    @Benchmark
+    public Value json()
+    {
+        return evaluate(json);
+    }
+}
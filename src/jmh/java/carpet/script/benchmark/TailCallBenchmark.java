@@ -0,0 +1,65 @@
+package carpet.script.benchmark;
+
+import carpet.script.Expression;
+import carpet.script.value.Value;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+/**
+ * Tail calls a million levels deep, which would overflow the stack if each call used a Java frame.
+ * Each benchmark checks the value it got, so running these also checks that tail calls don't lose results.
+ * {@link ScriptChecks} runs them once on a small stack as part of the build.
+ */
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TailCallBenchmark extends ScriptBenchmark
+{
+    private static final int DEPTH = 1_000_000;
+
+    private final Expression recursion = new Expression("sum_down(" + DEPTH + ", 0)");
+    private final Expression mutualRecursion = new Expression("is_even(" + DEPTH + ")");
+    private final Expression returnRecursion = new Expression("find_zero(" + DEPTH + ")");
+
+    @Override
+    protected String code()
+    {
+        return """
+                sum_down(n, acc) -> if (n == 0, acc, sum_down(n - 1, acc + n));
+                is_even(n) -> if (n == 0, true, is_odd(n - 1));
+                is_odd(n) -> if (n == 0, false, is_even(n - 1));
+                find_zero(n) -> (
+                    if (n == 0, return('found'));
+                    return(find_zero(n - 1))
+                );
+                """;
+    }
+
+    private static Value check(Value value, String expected)
+    {
+        if (!value.getString().equals(expected))
+        {
+            throw new IllegalStateException("Expected " + expected + " but got " + value.getString());
+        }
+        return value;
+    }
+
+    @Benchmark
+    public Value recursion()
+    {
+        return check(evaluate(recursion), String.valueOf((long) DEPTH * (DEPTH + 1) / 2));
+    }
+
+    @Benchmark
+    public Value mutualRecursion()
+    {
+        return check(evaluate(mutualRecursion), "true");
+    }
+
+    @Benchmark
+    public Value returnRecursion()
+    {
+        return check(evaluate(returnRecursion), "found");
+    }
+}
@@ -27,6 +27,7 @@ import carpet.logging.HUDController;
 import carpet.script.external.Carpet;
 import carpet.script.external.Vanilla;
 import carpet.script.utils.ParticleParser;
+import carpet.script.utils.RegionIndex;
 import carpet.utils.MobAI;
 import carpet.utils.SpawnReporter;
 import com.mojang.brigadier.CommandDispatcher;
@@ -192,6 +193,7 @@ public class CarpetServer // static for now - easier to handle all around the co
             LoggerRegistry.stopLoggers();
             HUDController.resetScarpetHUDs();
             ParticleParser.resetCache();
+            RegionIndex.clear();
             extensions.forEach(e -> e.onServerClosed(server));
             minecraft_server = null;
         }
@@ -0,0 +1,27 @@
+package carpet.mixins;
+
+import carpet.script.utils.RegionIndex;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.storage.ChunkStorage;
+import net.minecraft.world.level.chunk.storage.RegionStorageInfo;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+@Mixin(ChunkStorage.class)
+public abstract class ChunkStorage_scarpetRegionIndexMixin
+{
+    @Shadow public abstract RegionStorageInfo storageInfo();
+
+    @Inject(method = "write", at = @At("HEAD"))
+    private void onChunkWrite(ChunkPos pos, Supplier<CompoundTag> data, CallbackInfoReturnable<CompletableFuture<Void>> cir)
+    {
+        RegionIndex.chunkSaved(storageInfo(), pos);
+    }
+}
@@ -0,0 +1,375 @@
+package carpet.script;
+
+import carpet.script.Expression.ExpressionNode;
+import carpet.script.value.ListValue;
+import carpet.script.value.MapValue;
+import carpet.script.value.NumericValue;
+import carpet.script.value.StringValue;
+import carpet.script.value.Value;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.Nullable;
+
+/**
+ * Stores parsed, and possibly optimized, code of app modules in the world's scripts folder, so apps don't need
+ * to be parsed again when they are loaded with the same code.
+ * <p>
+ * Entries are keyed by the hash of the code, the version of the scripting engine and everything else that affects
+ * parsing, like the set of available functions, so loading the tree from the cache gives the same result
+ * as parsing the code. Trees parsed with and without optimizations are kept in separate files, so apps loaded
+ * in different modes don't replace each other's entries. Evaluation closures are recreated when the tree is loaded, so only tokens, the shape
+ * of the tree and values of constant nodes are stored. Trees that hold constants of types that can't be
+ * stored are simply not cached.
+ */
+class AstCache
+{
+    private static final int MAGIC = 0x53434153; // SCAS
+    private static final int FORMAT = 1;
+
+    private static final byte OP_CONSTANT = 0;
+    private static final byte OP_NODE = 1;
+
+    private static final byte VALUE_NULL = 0;
+    private static final byte VALUE_TRUE = 1;
+    private static final byte VALUE_FALSE = 2;
+    private static final byte VALUE_LONG = 3;
+    private static final byte VALUE_DOUBLE = 4;
+    private static final byte VALUE_STRING = 5;
+    private static final byte VALUE_LIST = 6;
+    private static final byte VALUE_MAP = 7;
+
+    private static final Token.TokenType[] TOKEN_TYPES = Token.TokenType.values();
+
+    private final Expression expression;
+    private final Path file;
+    private final String key;
+
+    private AstCache(Expression expression, Path file, String key)
+    {
+        this.expression = expression;
+        this.file = file;
+        this.key = key;
+    }
+
+    /**
+     * @return cache for the code of the expression, or null if the expression is not the code of an app
+     */
+    @Nullable
+    static AstCache of(Expression expression, Context context, boolean optimize)
+    {
+        if (expression.module == null || !expression.isTextSource() || context.host == null || context.host.scriptServer() == null)
+        {
+            return null;
+        }
+        ScriptServer server = context.host.scriptServer();
+        try
+        {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : List.of(Integer.toString(FORMAT), server.getVersion(), Boolean.toString(optimize), expression.getParserSettings(), expression.getCodeString()))
+            {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            // the direct mode builds its evaluation from the same tree as the optimized one
+            Path file = server.resolveResource("ast_cache/" + expression.module.name() + (optimize ? ".optimized" : ".default") + ".ast");
+            return file == null ? null : new AstCache(expression, file, HexFormat.of().formatHex(digest.digest()));
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            return null;
+        }
+    }
+
+    /**
+     * @return cached tree, or null if there is no valid entry for that code
+     */
+    @Nullable
+    ExpressionNode load(@Nullable Consumer<String> logger)
+    {
+        if (!Files.isRegularFile(file))
+        {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file)))))
+        {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT || !in.readUTF().equals(key))
+            {
+                return null;
+            }
+            ExpressionNode root = readTree(in);
+            if (logger != null)
+            {
+                logger.accept("Loaded code of " + expression.getModuleName() + " from cache");
+            }
+            return root;
+        }
+        catch (IOException | RuntimeException e)
+        {
+            // outdated or broken entry, will be replaced once the code is parsed again
+            return null;
+        }
+    }
+
+    void store(ExpressionNode root, @Nullable Consumer<String> logger)
+    {
+        try
+        {
+            Files.createDirectories(file.getParent());
+            Path temp = file.resolveSibling(file.getFileName() + "_tmp" + Thread.currentThread().threadId());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temp)))))
+            {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT);
+                out.writeUTF(key);
+                writeTree(out, root);
+            }
+            catch (IOException | IllegalArgumentException e)
+            {
+                Files.deleteIfExists(temp);
+                throw e;
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException | IllegalArgumentException e)
+        {
+            if (logger != null)
+            {
+                logger.accept("Code of " + expression.getModuleName() + " not cached: " + e.getMessage());
+            }
+        }
+    }
+
+    // nodes are stored children first, so reading them back only needs a stack, same as building the tree from RPN
+    private static void writeTree(DataOutputStream out, ExpressionNode root) throws IOException
+    {
+        Deque<ExpressionNode> pending = new ArrayDeque<>();
+        Deque<ExpressionNode> ordered = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty())
+        {
+            ExpressionNode node = pending.pop();
+            ordered.push(node);
+            node.args.forEach(pending::push);
+        }
+        out.writeInt(ordered.size());
+        for (ExpressionNode node : ordered)
+        {
+            writeToken(out, node.token);
+            out.writeInt(node.args.size());
+            if (node.op instanceof LazyValue.Constant constant)
+            {
+                out.writeByte(OP_CONSTANT);
+                writeValue(out, constant.get());
+            }
+            else if (node.op instanceof LazyValue.ContextFreeLazyValue)
+            {
+                throw new IllegalArgumentException("unsupported context free node " + node.token.surface);
+            }
+            else
+            {
+                out.writeByte(OP_NODE);
+            }
+        }
+    }
+
+    private ExpressionNode readTree(DataInputStream in) throws IOException
+    {
+        int count = in.readInt();
+        Deque<ExpressionNode> stack = new ArrayDeque<>();
+        for (int i = 0; i < count; i++)
+        {
+            Token token = readToken(in);
+            int argCount = in.readInt();
+            ExpressionNode[] args = new ExpressionNode[argCount];
+            for (int a = argCount - 1; a >= 0; a--)
+            {
+                args[a] = stack.pop();
+            }
+            List<ExpressionNode> argList = argCount == 0 ? Collections.emptyList() : Arrays.asList(args);
+            LazyValue op = switch (in.readByte())
+            {
+                case OP_CONSTANT -> LazyValue.ofConstant(readValue(in));
+                case OP_NODE -> expression.createOp(token, argList);
+                default -> throw new IOException("Invalid node");
+            };
+            ExpressionNode node = new ExpressionNode(op, argList, token);
+            token.node = node;
+            stack.push(node);
+        }
+        if (stack.size() != 1)
+        {
+            throw new IOException("Invalid tree");
+        }
+        return stack.pop();
+    }
+
+    private static void writeToken(DataOutputStream out, Token token) throws IOException
+    {
+        out.writeByte(token.type.ordinal());
+        writeString(out, token.surface);
+        writeString(out, token.display);
+        writeString(out, token.comment);
+        out.writeInt(token.pos);
+        out.writeInt(token.ordinal);
+        out.writeInt(token.linepos);
+        out.writeInt(token.lineno);
+    }
+
+    private static Token readToken(DataInputStream in) throws IOException
+    {
+        Token token = new Token();
+        token.type = TOKEN_TYPES[in.readByte()];
+        token.surface = readString(in);
+        token.display = readString(in);
+        token.comment = readString(in);
+        token.pos = in.readInt();
+        token.ordinal = in.readInt();
+        token.linepos = in.readInt();
+        token.lineno = in.readInt();
+        return token;
+    }
+
+    private static void writeValue(DataOutputStream out, Value value) throws IOException
+    {
+        if (value.boundVariable != null)
+        {
+            throw new IllegalArgumentException("unsupported bound constant " + value.getString());
+        }
+        if (value == Value.NULL)
+        {
+            out.writeByte(VALUE_NULL);
+        }
+        else if (value == Value.TRUE)
+        {
+            out.writeByte(VALUE_TRUE);
+        }
+        else if (value == Value.FALSE)
+        {
+            out.writeByte(VALUE_FALSE);
+        }
+        else if (value.getClass() == NumericValue.class)
+        {
+            NumericValue number = (NumericValue) value;
+            if (number.hasLongValue())
+            {
+                out.writeByte(VALUE_LONG);
+                out.writeLong(number.getLong());
+            }
+            else
+            {
+                out.writeByte(VALUE_DOUBLE);
+                out.writeDouble(number.getDouble());
+            }
+        }
+        else if (value.getClass() == StringValue.class)
+        {
+            out.writeByte(VALUE_STRING);
+            writeString(out, value.getString());
+        }
+        else if (value.getClass() == ListValue.class)
+        {
+            List<Value> items = ((ListValue) value).getItems();
+            out.writeByte(VALUE_LIST);
+            out.writeInt(items.size());
+            for (Value item : items)
+            {
+                writeValue(out, item);
+            }
+        }
+        else if (value.getClass() == MapValue.class)
+        {
+            MapValue map = (MapValue) value;
+            out.writeByte(VALUE_MAP);
+            out.writeInt(map.length());
+            for (var entry : map.getMap().entrySet())
+            {
+                writeValue(out, entry.getKey());
+                writeValue(out, entry.getValue());
+            }
+        }
+        else
+        {
+            // entities, blocks, functions and such depend on the state of the game and can't be restored
+            throw new IllegalArgumentException("unsupported constant of type " + value.getTypeString());
+        }
+    }
+
+    private static Value readValue(DataInputStream in) throws IOException
+    {
+        byte type = in.readByte();
+        switch (type)
+        {
+            case VALUE_NULL:
+                return Value.NULL;
+            case VALUE_TRUE:
+                return Value.TRUE;
+            case VALUE_FALSE:
+                return Value.FALSE;
+            case VALUE_LONG:
+                return new NumericValue(in.readLong());
+            case VALUE_DOUBLE:
+                return new NumericValue(in.readDouble());
+            case VALUE_STRING:
+                return new StringValue(readString(in));
+            case VALUE_LIST:
+            {
+                int size = in.readInt();
+                List<Value> items = new ArrayList<>(size);
+                for (int i = 0; i < size; i++)
+                {
+                    items.add(readValue(in));
+                }
+                return new ListValue(items);
+            }
+            case VALUE_MAP:
+            {
+                int size = in.readInt();
+                MapValue map = new MapValue(Collections.emptyList());
+                for (int i = 0; i < size; i++)
+                {
+                    Value key = readValue(in);
+                    map.put(key, readValue(in));
+                }
+                return map;
+            }
+            default:
+                throw new IOException("Invalid value type " + type);
+        }
+    }
+
+    // not using writeUTF, since string constants can be longer than 64k
+    private static void writeString(DataOutputStream out, String string) throws IOException
+    {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException
+    {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,56 @@
+package carpet.script;
+
+import carpet.script.value.FunctionValue;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Function called by its name at a given place in the code, so repeated calls from there don't need to look it up
+ * through the functions and imports of the module again. Resolved function stays valid for as long as
+ * the functions of the host don't change, which is tracked by {@link ScriptHost#functionGeneration()}.
+ */
+public final class CallSiteCache
+{
+    private static final LongAdder hits = new LongAdder();
+    private static final LongAdder misses = new LongAdder();
+
+    private record Target(ScriptHost host, long generation, String name, FunctionValue function)
+    {
+    }
+
+    // immutable, so it can be replaced by any thread running that code without further synchronization
+    private Target target;
+
+    public FunctionValue resolve(Context c, Module module, String name)
+    {
+        ScriptHost host = c.host;
+        // read before the lookup, so changes made while resolving the function invalidate the result
+        long generation = host.functionGeneration();
+        Target cached = target;
+        if (cached != null && cached.host() == host && cached.generation() == generation && cached.name().equals(name))
+        {
+            hits.increment();
+            return cached.function();
+        }
+        misses.increment();
+        FunctionValue function = host.getAssertFunction(module, name);
+        target = new Target(host, generation, name, function);
+        return function;
+    }
+
+    /**
+     * @return number of calls that used the cached function
+     */
+    public static long hits()
+    {
+        return hits.sum();
+    }
+
+    /**
+     * @return number of calls that needed to look the function up
+     */
+    public static long misses()
+    {
+        return misses.sum();
+    }
+}
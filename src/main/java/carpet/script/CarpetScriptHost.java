@@ -22,7 +22,6 @@ import carpet.script.value.NumericValue;
 import carpet.script.value.StringValue;
 import carpet.script.value.Value;
 
-import com.google.gson.JsonElement;
 import com.mojang.brigadier.arguments.StringArgumentType;
 import com.mojang.brigadier.builder.ArgumentBuilder;
 import com.mojang.brigadier.builder.LiteralArgumentBuilder;
@@ -91,6 +90,7 @@ public class CarpetScriptHost extends ScriptHost
         {
             persistenceRequired = ((CarpetScriptHost) parent).persistenceRequired;
             strict = parent.strict;
+            virtualTasks = parent.virtualTasks;
         }
         appConfig = config;
         appArgTypes = argTypes;
@@ -112,6 +112,7 @@ public class CarpetScriptHost extends ScriptHost
                 ex.getExpr().asATextSource();
                 host.storeSource = storeSource;
                 host.root = ex.scriptRunCommand(host, BlockPos.containing(source.getPosition())).getRight();
+                host.reusedExpressions = ex.getExpr().getReusedExpressions();
             }
             catch (CarpetExpressionException e)
             {
@@ -322,6 +323,7 @@ public class CarpetScriptHost extends ScriptHost
             setPerPlayer(config.getOrDefault(new StringValue("scope"), new StringValue("player")).getString().equalsIgnoreCase("player"));
             persistenceRequired = config.getOrDefault(new StringValue("stay_loaded"), Value.TRUE).getBoolean();
             strict = config.getOrDefault(StringValue.of("strict"), Value.FALSE).getBoolean();
+            virtualTasks = config.getOrDefault(StringValue.of("virtual_tasks"), Value.FALSE).getBoolean();
             eventPriority = config.getOrDefault(new StringValue("event_priority"), Value.ZERO).readDoubleNumber();
             // check requires
             Value loadRequirements = config.get(new StringValue("requires"));
@@ -1020,12 +1022,17 @@ public class CarpetScriptHost extends ScriptHost
         return (!isDefaultApp() || fdesc.isShared) && fdesc.appendToTextFile(main, data); // if belongs to an app, cannot be default host.
     }
 
+    public boolean writeJsonFile(FileArgument fdesc, Value value)
+    {
+        return (!isDefaultApp() || fdesc.isShared) && fdesc.writeJsonFile(main, value);
+    }
+
     public List<String> readTextResource(FileArgument fdesc)
     {
         return isDefaultApp() && !fdesc.isShared ? null : fdesc.listFile(main);
     }
 
-    public JsonElement readJsonFile(FileArgument fdesc)
+    public Value readJsonFile(FileArgument fdesc)
     {
         return isDefaultApp() && !fdesc.isShared ? null : fdesc.readJsonFile(main);
     }
@@ -1113,7 +1120,7 @@ public class CarpetScriptHost extends ScriptHost
         format += " ";
         List<String> stringsToFormat = new ArrayList<>();
         TreeMap<Integer, String> posToLocal = new TreeMap<>(); //Holds whether a local variable name is found at a specific index
-        for (String local : context.variables.keySet())
+        for (String local : context.getAllVariableNames())
         {
             int pos = line.indexOf(local);
             while (pos != -1)
@@ -1135,7 +1142,7 @@ public class CarpetScriptHost extends ScriptHost
             }
             stringsToFormat.add(format + line.substring(lastPos, foundLocal.getKey()));
             stringsToFormat.add(format + foundLocal.getValue());
-            Value val = context.variables.get(foundLocal.getValue()).evalValue(context);
+            Value val = context.getVariable(foundLocal.getValue()).evalValue(context);
             String type = val.getTypeString();
             String value;
             try
@@ -449,6 +449,12 @@ public class CarpetScriptServer extends ScriptServer
         return server.getWorldPath(LevelResource.ROOT).resolve("scripts/" + suffix);
     }
 
+    @Override
+    public String getVersion()
+    {
+        return Carpet.getCarpetVersion();
+    }
+
     public void onPlayerLoggedOut(ServerPlayer player, Component reason)
     {
         if (PLAYER_DISCONNECTS.isNeeded())
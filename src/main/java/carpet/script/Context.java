@@ -5,6 +5,7 @@ import carpet.script.value.ThreadValue;
 import carpet.script.value.Value;
 
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 
@@ -27,46 +28,97 @@ public class Context
     public static final Type LVALUE = Type.LVALUE;
     public static final Type MAPDEF = Type.MAPDEF;
 
-    public Map<String, LazyValue> variables = new HashMap<>();
+    /**
+     * Local variables of this frame, normally a {@link VariableFrame}. Code that replaces it with another map
+     * keeps working, the map is turned into a frame on the next access.
+     */
+    public Map<String, LazyValue> variables = new VariableFrame();
 
     public final ScriptHost host;
 
     private ThreadValue threadContext = null;
 
+    // values of invariant expressions computed in the current run of loops and blocks of code
+    private Map<Object, Object[]> invariants = null;
+
     public Context(ScriptHost host)
     {
         this.host = host;
     }
 
+    public VariableFrame frame()
+    {
+        if (variables instanceof final VariableFrame frame)
+        {
+            return frame;
+        }
+        VariableFrame frame = new VariableFrame(variables);
+        variables = frame;
+        return frame;
+    }
+
     public LazyValue getVariable(String name)
     {
-        return variables.get(name);
+        return frame().get(name);
+    }
+
+    /**
+     * @param slot one of the slots of variables used by built-in loops, like {@link VariableFrame#ELEMENT}
+     */
+    public LazyValue getVariable(int slot)
+    {
+        return frame().get(slot);
     }
 
     public void setVariable(String name, LazyValue lv)
     {
-        variables.put(name, lv);
+        frame().put(name, lv);
+    }
+
+    /**
+     * @param slot one of the slots of variables used by built-in loops, like {@link VariableFrame#ELEMENT}
+     */
+    public void setVariable(int slot, LazyValue lv)
+    {
+        frame().set(slot, lv);
     }
 
     public void delVariable(String variable)
     {
-        variables.remove(variable);
+        frame().remove(variable);
     }
 
     public void removeVariablesMatching(String varname)
     {
-        variables.entrySet().removeIf(e -> e.getKey().startsWith(varname));
+        frame().removeIf(name -> name.startsWith(varname));
     }
 
     public Context with(String variable, LazyValue lv)
     {
-        variables.put(variable, lv);
+        frame().put(variable, lv);
         return this;
     }
 
     public Set<String> getAllVariableNames()
     {
-        return variables.keySet();
+        return new LinkedHashSet<>(frame().names());
+    }
+
+    Object[] invariants(Object region, int size)
+    {
+        if (invariants == null)
+        {
+            invariants = new HashMap<>();
+        }
+        return invariants.computeIfAbsent(region, r -> new Object[size]);
+    }
+
+    void resetInvariants(Object region)
+    {
+        if (invariants != null)
+        {
+            invariants.remove(region);
+        }
     }
 
     public Context recreate()
@@ -90,9 +142,9 @@ public class Context
     protected void initialize()
     {
         //special variables for second order functions so we don't need to check them all the time
-        variables.put("_", (c, t) -> Value.ZERO);
-        variables.put("_i", (c, t) -> Value.ZERO);
-        variables.put("_a", (c, t) -> Value.ZERO);
+        setVariable(VariableFrame.ELEMENT, (c, t) -> Value.ZERO);
+        setVariable(VariableFrame.INDEX, (c, t) -> Value.ZERO);
+        setVariable(VariableFrame.ACCUMULATOR, (c, t) -> Value.ZERO);
     }
 
     public Context duplicate()
@@ -138,6 +190,13 @@ public class Context
 
         }
 
+        @Override
+        public VariableFrame frame()
+        {
+            badProgrammer();
+            return null;
+        }
+
         @Override
         public LazyValue getVariable(String name)
         {
@@ -145,12 +204,25 @@ public class Context
             return null;
         }
 
+        @Override
+        public LazyValue getVariable(int slot)
+        {
+            badProgrammer();
+            return null;
+        }
+
         @Override
         public void setVariable(String name, LazyValue lv)
         {
             badProgrammer();
         }
 
+        @Override
+        public void setVariable(int slot, LazyValue lv)
+        {
+            badProgrammer();
+        }
+
         @Override
         public void delVariable(String variable)
         {
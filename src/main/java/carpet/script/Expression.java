@@ -11,6 +11,7 @@ import carpet.script.Fluff.QuadFunction;
 import carpet.script.Fluff.QuinnFunction;
 import carpet.script.Fluff.SexFunction;
 import carpet.script.Fluff.TriFunction;
+import carpet.script.argument.FunctionArgument;
 import carpet.script.exception.BreakStatement;
 import carpet.script.exception.ContinueStatement;
 import carpet.script.exception.ExitStatement;
@@ -29,6 +30,7 @@ import carpet.script.language.Sys;
 import carpet.script.language.Threading;
 import carpet.script.value.FunctionValue;
 import carpet.script.value.NumericValue;
+import carpet.script.value.PatternCache;
 import carpet.script.value.StringValue;
 import carpet.script.value.Value;
 import it.unimi.dsi.fastutil.Stack;
@@ -46,6 +48,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.DoubleBinaryOperator;
@@ -90,6 +93,19 @@ public class Expression
         module = mi;
     }
 
+    boolean isTextSource()
+    {
+        return allowComments;
+    }
+
+    /**
+     * @return description of everything other than the code itself that affects how the code gets parsed
+     */
+    String getParserSettings()
+    {
+        return allowComments + ";" + allowNewlineSubstitutions + ";" + new TreeSet<>(operators.keySet()) + ";" + new TreeSet<>(functions.keySet());
+    }
+
     /**
      * Cached AST (Abstract Syntax Tree) (root) of the expression
      */
@@ -99,6 +115,16 @@ public class Expression
     @Nullable
     private ExpressionNode root = null;
 
+    /**
+     * slots of local variables, assigned while the expression is parsed
+     */
+    private final VariableFrame.Layout variableLayout = new VariableFrame.Layout();
+
+    /**
+     * expressions hoisted out of loops or reused in blocks when the code was compiled
+     */
+    private List<String> reusedExpressions = List.of();
+
     /**
      * script specific operatos and built-in functions
      */
@@ -972,7 +998,8 @@ public class Expression
             }
             else
             {
-                contextValues.put(outer, lv);
+                // loop variables are updated in place, so need to capture their current value
+                contextValues.put(outer, lv instanceof final LazyValue.Binding binding ? binding.freeze() : lv);
             }
         }
         if (contextValues.isEmpty())
@@ -1067,6 +1094,102 @@ public class Expression
         return variable;
     }
 
+    /**
+     * @return evaluation of a variable, same as in the code
+     */
+    LazyValue variable(String name)
+    {
+        return new VariableReference(name);
+    }
+
+    /**
+     * @return function or operator run by the node of that token
+     */
+    @Nullable
+    Fluff.EvalNode operation(Token token)
+    {
+        return (token.type == Token.TokenType.FUNCTION ? functions : operators).get(token.surface);
+    }
+
+    /**
+     * @return slots of local variables used by the code of this expression
+     */
+    public VariableFrame.Layout variableLayout()
+    {
+        return variableLayout;
+    }
+
+    public List<String> getReusedExpressions()
+    {
+        return reusedExpressions;
+    }
+
+    /**
+     * Variable access resolved at parse time. Locals are bound to their slot in the {@link VariableFrame.Layout}
+     * of this expression, and globals skip the local frame altogether, so no name checks nor hashing is needed
+     * when running the code in frames of this expression.
+     */
+    public final class VariableReference implements LazyValue
+    {
+        private final String name;
+        private final int slot;
+
+        private VariableReference(String name)
+        {
+            this.name = name;
+            this.slot = name.startsWith("global_") ? -1 : variableLayout.slotOf(name);
+        }
+
+        public String name()
+        {
+            return name;
+        }
+
+        public boolean isGlobal()
+        {
+            return slot < 0;
+        }
+
+        public LazyValue resolve(Context c)
+        {
+            LazyValue variable;
+            if (slot >= 0)
+            {
+                variable = c.frame().get(variableLayout, slot, name);
+                if (variable != null)
+                {
+                    return variable;
+                }
+            }
+            variable = c.host.getGlobalVariable(module, name);
+            if (variable != null)
+            {
+                return variable;
+            }
+            variable = (_c, _t) -> _c.host.strict ? Value.UNDEF.reboundedTo(name) : Value.NULL.reboundedTo(name);
+            assign(c, variable);
+            return variable;
+        }
+
+        public void assign(Context c, LazyValue lv)
+        {
+            if (slot < 0)
+            {
+                c.host.setGlobalVariable(module, name, lv);
+            }
+            else
+            {
+                c.frame().set(variableLayout, slot, name, lv);
+            }
+        }
+
+        @Override
+        public Value evalValue(Context c, Context.Type type)
+        {
+            return resolve(c).evalValue(c, type);
+        }
+    }
+
     public static final Expression none = new Expression("null");
 
     /**
@@ -1248,7 +1371,7 @@ public class Expression
     }
 
     public enum LoadOverride {
-        DEFAULT("clean"), CANONICAL("canonical"), OPTIMIZED("optimized"), FUNCTIONAL("functional"), FUNCTIONAL_OPTIMIZED("functional_optimized");
+        DEFAULT("clean"), CANONICAL("canonical"), OPTIMIZED("optimized"), FUNCTIONAL("functional"), FUNCTIONAL_OPTIMIZED("functional_optimized"), DIRECT("direct");
         public String equivalent;
         LoadOverride(String equivalent) {
             this.equivalent = equivalent;
@@ -1260,12 +1383,14 @@ public class Expression
         if (ast == null)
         {
             boolean functions = false;
+            boolean direct = false;
             if (override != LoadOverride.DEFAULT) {
-                optimize = override == LoadOverride.OPTIMIZED || override == LoadOverride.FUNCTIONAL_OPTIMIZED;
+                optimize = override == LoadOverride.OPTIMIZED || override == LoadOverride.FUNCTIONAL_OPTIMIZED || override == LoadOverride.DIRECT;
                 functions = override == LoadOverride.FUNCTIONAL || override == LoadOverride.FUNCTIONAL_OPTIMIZED;
+                direct = override == LoadOverride.DIRECT;
             }
 
-            Pair<ExpressionNode, LazyValue> ret = getAST(c, optimize, functions, logger);
+            Pair<ExpressionNode, LazyValue> ret = getAST(c, optimize, functions, direct, logger);
             ast = ret.getRight();
             root = ret.getLeft();
         }
@@ -1412,17 +1537,16 @@ public class Expression
         {
             switch (token.type) {
                 case UNARY_OPERATOR -> {
-                    ExpressionNode node = nodeStack.pop();
-                    LazyValue result = (c, t) -> operators.get(token.surface).lazyEval(c, t, this, token, node.op, null).evalValue(c, t);
-                    ExpressionNode newNode = new ExpressionNode(result, Collections.singletonList(node), token);
+                    List<ExpressionNode> args = Collections.singletonList(nodeStack.pop());
+                    ExpressionNode newNode = new ExpressionNode(createOp(token, args), args, token);
                     token.node = newNode;
                     nodeStack.push(newNode);
                 }
                 case OPERATOR -> {
                     ExpressionNode v1 = nodeStack.pop();
                     ExpressionNode v2 = nodeStack.pop();
-                    LazyValue result = (c, t) -> operators.get(token.surface).lazyEval(c, t, this, token, v2.op, v1.op).evalValue(c, t);
-                    ExpressionNode newNode = new ExpressionNode(result, List.of(v2, v1), token);
+                    List<ExpressionNode> args = List.of(v2, v1);
+                    ExpressionNode newNode = new ExpressionNode(createOp(token, args), args, token);
                     token.node = newNode;
                     nodeStack.push(newNode);
                 }
@@ -1437,24 +1561,22 @@ public class Expression
                     }
                     else
                     {
-                        ExpressionNode newNode = new ExpressionNode(((c, t) -> getOrSetAnyVariable(c, token.surface).evalValue(c, t)), Collections.emptyList(), token);
+                        ExpressionNode newNode = new ExpressionNode(createOp(token, Collections.emptyList()), Collections.emptyList(), token);
                         token.node = newNode;
                         nodeStack.push(newNode);
                     }
                 }
                 case FUNCTION -> {
                     String name = token.surface;
-                    ILazyFunction f;
                     ArrayList<ExpressionNode> p;
                     boolean isKnown = functions.containsKey(name); // globals will be evaluated lazily, not at compile time via .
                     if (isKnown)
                     {
-                        f = functions.get(name);
+                        ILazyFunction f = functions.get(name);
                         p = new ArrayList<>(!f.numParamsVaries() ? f.getNumParams() : 0);
                     }
                     else // potentially unknown function or just unknown function
                     {
-                        f = functions.get("call");
                         p = new ArrayList<>();
                     }
                     // pop parameters off the stack until we hit the start of
@@ -1473,11 +1595,7 @@ public class Expression
                     {
                         nodeStack.pop();
                     }
-                    List<LazyValue> params = p.stream().map(n -> n.op).collect(Collectors.toList());
-                    ExpressionNode newNode = new ExpressionNode(
-                            (c, t) -> f.lazyEval(c, t, this, token, params).evalValue(c, t),
-                            p, token
-                    );
+                    ExpressionNode newNode = new ExpressionNode(createOp(token, p), p, token);
                     token.node = newNode;
                     nodeStack.push(newNode);
                 }
@@ -1527,28 +1645,104 @@ public class Expression
         return nodeStack.pop();
     }
 
-    private Pair<ExpressionNode, LazyValue> getAST(Context context, boolean optimize, boolean functional, @Nullable Consumer<String> logger)
+    /**
+     * Creates the evaluation of a non-constant node of the parse tree, as used by code that doesn't get optimized
+     */
+    LazyValue createOp(Token token, List<ExpressionNode> args)
     {
-        Tokenizer tokenizer = new Tokenizer(context, this, expression, allowComments, allowNewlineSubstitutions);
-        // stripping lousy but acceptable semicolons
-        List<Token> cleanedTokens = Tokenizer.postProcess(tokenizer.parseTokens());
-
-        List<Token> rpn = shuntingYard(context, cleanedTokens);
-        validate(context, rpn);
-        ExpressionNode root = RPNToParseTree(rpn, context);
-        if (!optimize && !functional)
+        switch (token.type)
         {
-            return Pair.of(root, root.op);
+            case UNARY_OPERATOR:
+            {
+                ExpressionNode node = args.get(0);
+                ILazyOperator op = operators.get(token.surface);
+                return (c, t) -> op.lazyEval(c, t, this, token, node.op, null).evalValue(c, t);
+            }
+            case OPERATOR:
+            {
+                ExpressionNode v2 = args.get(0);
+                ExpressionNode v1 = args.get(1);
+                ILazyOperator op = operators.get(token.surface);
+                if (token.surface.equals("->"))
+                {
+                    LazyValue body = tailOp(v1, Context.Type.NONE, (n, type) -> n.op);
+                    return (c, t) -> op.lazyEval(c, t, this, token, v2.op, body).evalValue(c, t);
+                }
+                return (c, t) -> op.lazyEval(c, t, this, token, v2.op, v1.op).evalValue(c, t);
+            }
+            case VARIABLE:
+                return new VariableReference(token.surface);
+            case FUNCTION:
+            {
+                // unknown functions are parsed as calls to 'call' by now
+                ILazyFunction f = functions.get(token.surface);
+                if (f == null)
+                {
+                    throw new InternalExpressionException("Unknown function " + token.surface);
+                }
+                List<LazyValue> params = args.stream().map(n -> n.op).collect(Collectors.toList());
+                if (token.surface.equals("define") && args.size() == 2)
+                {
+                    params.set(1, tailOp(args.get(1), Context.Type.NONE, (n, type) -> n.op));
+                }
+                return (c, t) -> f.lazyEval(c, t, this, token, params).evalValue(c, t);
+            }
+            default:
+                throw new InternalExpressionException("Unexpected token '" + token.type + " " + token.surface + "'");
         }
+    }
 
+    private Pair<ExpressionNode, LazyValue> getAST(Context context, boolean optimize, boolean functional, boolean direct, @Nullable Consumer<String> logger)
+    {
+        // functional representation is only used to inspect the code, so it is not worth caching
+        AstCache cache = functional ? null : AstCache.of(this, context, optimize);
+        ExpressionNode root = cache == null ? null : cache.load(logger);
         Context optimizeOnlyContext = new Context.ContextForErrorReporting(context);
-        // flipping to full functional representation makes it little underperforming, might be related
-        // to the fact that operators are running from a bigger pool or function execution is slower
-        optimizeTree(root, optimizeOnlyContext, logger, optimize, functional);
+        if (root == null)
+        {
+            Tokenizer tokenizer = new Tokenizer(context, this, expression, allowComments, allowNewlineSubstitutions);
+            // stripping lousy but acceptable semicolons
+            List<Token> cleanedTokens = Tokenizer.postProcess(tokenizer.parseTokens());
+
+            List<Token> rpn = shuntingYard(context, cleanedTokens);
+            validate(context, rpn);
+            root = RPNToParseTree(rpn, context);
+            if (optimize || functional)
+            {
+                // flipping to full functional representation makes it little underperforming, might be related
+                // to the fact that operators are running from a bigger pool or function execution is slower
+                optimizeTree(root, optimizeOnlyContext, logger, optimize, functional);
+            }
+            if (cache != null)
+            {
+                cache.store(root, logger);
+            }
+        }
         if (!optimize) {
             return Pair.of(root, root.op);
         }
-        return Pair.of(root, extractOp(optimizeOnlyContext, root, Context.Type.NONE));
+        precompilePatterns(root);
+        Invariants invariants = Invariants.of(this, root, logger);
+        reusedExpressions = invariants.report();
+        return Pair.of(root, extractOp(optimizeOnlyContext, root, Context.Type.NONE, direct, invariants));
+    }
+
+    /**
+     * Compiles string literals used as regular expressions by matching, replacing and splitting
+     */
+    private static void precompilePatterns(ExpressionNode node)
+    {
+        int patternArg = switch (node.token.surface)
+        {
+            case "~", "match", "replace", "replace_first" -> node.token.type.isFunctional() && node.args.size() >= 2 ? 1 : -1;
+            case "split" -> node.token.type == Token.TokenType.FUNCTION && node.args.size() == 2 ? 0 : -1;
+            default -> -1;
+        };
+        if (patternArg >= 0 && node.args.get(patternArg).op instanceof final LazyValue.Constant constant)
+        {
+            PatternCache.precompile(constant.get());
+        }
+        node.args.forEach(Expression::precompilePatterns);
     }
 
     private void optimizeTree(ExpressionNode root, Context optimizeOnlyContext, @Nullable Consumer<String> logger, boolean optimize, boolean toFunctional) {
@@ -1673,7 +1867,7 @@ public class Expression
 
         Context optimizeOnlyContext = new Context.ContextForErrorReporting(context);
         // pure functional
-        optimizeTree(root, optimizeOnlyContext, null, style.contains("optimized"), style.contains("functional"));
+        optimizeTree(root, optimizeOnlyContext, null, style.contains("optimized") || style.equalsIgnoreCase("direct"), style.contains("functional"));
         List<Token> compileTimeOptimized = root.tokensRecursive(this, cleanedTokens, tokenPointers);
 
         return compileTimeOptimized;
@@ -1904,7 +2098,12 @@ public class Expression
         return true;
     }
 
-    private LazyValue extractOp(Context ctx, ExpressionNode node, Context.Type expectedType)
+    private LazyValue extractOp(Context ctx, ExpressionNode node, Context.Type expectedType, boolean direct, Invariants invariants)
+    {
+        return invariants.wrap(node, extractNodeOp(ctx, node, expectedType, direct, invariants));
+    }
+
+    private LazyValue extractNodeOp(Context ctx, ExpressionNode node, Context.Type expectedType, boolean direct, Invariants invariants)
     {
         if (node.op instanceof LazyValue.Constant)
         {
@@ -1928,24 +2127,72 @@ public class Expression
             {
                 ILazyOperator op = operators.get(token.surface);
                 Context.Type requestedType = op.staticType(expectedType);
-                LazyValue arg = extractOp(ctx, node.args.get(0), requestedType);
+                LazyValue arg = extractOp(ctx, node.args.get(0), requestedType, direct, invariants);
+                if (direct && op instanceof final AbstractUnaryOperator unary)
+                {
+                    return (c, t) -> {
+                        try
+                        {
+                            return unary.evalUnary(arg.evalValue(c, Context.Type.NONE));
+                        }
+                        catch (RuntimeException exc)
+                        {
+                            throw handleCodeException(c, exc, this, token);
+                        }
+                    };
+                }
                 return (c, t) -> op.lazyEval(c, t, this, token, arg, null).evalValue(c, t);
             }
             case OPERATOR:
             {
                 ILazyOperator op = operators.get(token.surface);
                 Context.Type requestedType = op.staticType(expectedType);
-                LazyValue arg = extractOp(ctx, node.args.get(0), requestedType);
-                LazyValue arh = extractOp(ctx, node.args.get(1), requestedType);
+                LazyValue arg = extractOp(ctx, node.args.get(0), requestedType, direct, invariants);
+                LazyValue arh = token.surface.equals("->")
+                        ? tailOp(node.args.get(1), requestedType, (n, type) -> extractOp(ctx, n, type, direct, invariants))
+                        : extractOp(ctx, node.args.get(1), requestedType, direct, invariants);
+                if (direct && op instanceof final AbstractOperator binary && !(op instanceof AbstractUnaryOperator))
+                {
+                    return (c, t) -> {
+                        try
+                        {
+                            return binary.eval(arg.evalValue(c, Context.Type.NONE), arh.evalValue(c, Context.Type.NONE));
+                        }
+                        catch (RuntimeException exc)
+                        {
+                            throw handleCodeException(c, exc, this, token);
+                        }
+                    };
+                }
                 return (c, t) -> op.lazyEval(c, t, this, token, arg, arh).evalValue(c, t);
             }
             case VARIABLE:
-                return (c, t) -> getOrSetAnyVariable(c, token.surface).evalValue(c, t);
+                return new VariableReference(token.surface);
             case FUNCTION:
             {
                 ILazyFunction f = functions.get(token.surface);
                 Context.Type requestedType = f.staticType(expectedType);
-                List<LazyValue> params = node.args.stream().map(n -> extractOp(ctx, n, requestedType)).collect(Collectors.toList());
+                // body of a function definition
+                ExpressionNode body = token.surface.equals("define") && node.args.size() == 2 ? node.args.get(1) : null;
+                List<LazyValue> params = node.args.stream().map(n -> n == body
+                        ? tailOp(n, requestedType, (nn, type) -> extractOp(ctx, nn, type, direct, invariants))
+                        : extractOp(ctx, n, requestedType, direct, invariants)
+                ).collect(Collectors.toList());
+                if (direct && f instanceof final AbstractFunction eager)
+                {
+                    // eager functions ignore the requested type and don't need a lazy wrapper around the result
+                    return (c, t) -> {
+                        ILazyFunction.checkInterrupts();
+                        try
+                        {
+                            return eager.eval(eager.unpackArgs(params, c, Context.Type.NONE));
+                        }
+                        catch (RuntimeException exc)
+                        {
+                            throw handleCodeException(c, exc, this, token);
+                        }
+                    };
+                }
                 return (c, t) -> f.lazyEval(c, t, this, token, params).evalValue(c, t);
             }
             case CONSTANT:
@@ -1956,6 +2203,157 @@ public class Expression
         }
     }
 
+    /**
+     * Evaluation of a node in tail position of a function body, and of its own tail position arguments
+     */
+    private record TailPosition(LazyValue op, BiFunction<Context, Context.Type, Object> tail) implements LazyValue.TailValue
+    {
+        @Override
+        public Value evalValue(Context c, Context.Type type)
+        {
+            return op.evalValue(c, type);
+        }
+
+        @Override
+        public Object evalTail(Context c, Context.Type type)
+        {
+            return tail.apply(c, type);
+        }
+    }
+
+    /**
+     * Creates the evaluation of the body of a function, where function calls in tail position, reached through
+     * ';', 'then', 'if' and 'return', are not made, but returned to {@link FunctionValue} to make them once
+     * the body is done. Evaluated as a regular value, like in map definitions, it behaves just like the plain code
+     *
+     * @param ops evaluation of the nodes that are not in tail position
+     */
+    private LazyValue tailOp(ExpressionNode node, Context.Type expectedType, BiFunction<ExpressionNode, Context.Type, LazyValue> ops)
+    {
+        if (node.op instanceof LazyValue.ContextFreeLazyValue)
+        {
+            return ops.apply(node, expectedType);
+        }
+        Token token = node.token;
+        if (token.type == Token.TokenType.OPERATOR && token.surface.equals(";"))
+        {
+            ILazyOperator operator = operators.get(token.surface);
+            Context.Type requestedType = operator.staticType(expectedType);
+            LazyValue first = ops.apply(node.args.get(0), requestedType);
+            LazyValue last = tailOp(node.args.get(1), requestedType, ops);
+            return new TailPosition((c, t) -> operator.lazyEval(c, t, this, token, first, last).evalValue(c, t), (c, t) -> {
+                ILazyFunction.checkInterrupts();
+                try
+                {
+                    first.evalValue(c, Context.VOID);
+                    return LazyValue.TailValue.evalTail(last, c, t);
+                }
+                catch (RuntimeException exc)
+                {
+                    throw handleCodeException(c, exc, this, token);
+                }
+            });
+        }
+        if (token.type != Token.TokenType.FUNCTION || node.args.isEmpty())
+        {
+            return ops.apply(node, expectedType);
+        }
+        ILazyFunction f = functions.get(token.surface);
+        Context.Type requestedType = f.staticType(expectedType);
+        List<LazyValue> params = new ArrayList<>(node.args.size());
+        switch (token.surface)
+        {
+            case "then":
+            {
+                int last = node.args.size() - 1;
+                for (int i = 0; i < last; i++)
+                {
+                    params.add(ops.apply(node.args.get(i), requestedType));
+                }
+                params.add(tailOp(node.args.get(last), requestedType, ops));
+                return new TailPosition((c, t) -> f.lazyEval(c, t, this, token, params).evalValue(c, t), (c, t) -> {
+                    ILazyFunction.checkInterrupts();
+                    try
+                    {
+                        for (int i = 0; i < last; i++)
+                        {
+                            params.get(i).evalValue(c, Context.VOID);
+                        }
+                        return LazyValue.TailValue.evalTail(params.get(last), c, t);
+                    }
+                    catch (RuntimeException exc)
+                    {
+                        throw handleCodeException(c, exc, this, token);
+                    }
+                });
+            }
+            case "if":
+            {
+                if (node.args.size() < 2)
+                {
+                    return ops.apply(node, expectedType);
+                }
+                for (int i = 0; i < node.args.size(); i++)
+                {
+                    // conditions are at even positions, except for the default branch at the end
+                    boolean condition = i % 2 == 0 && i < node.args.size() - 1;
+                    params.add(condition ? ops.apply(node.args.get(i), requestedType) : tailOp(node.args.get(i), requestedType, ops));
+                }
+                return new TailPosition((c, t) -> f.lazyEval(c, t, this, token, params).evalValue(c, t), (c, t) -> {
+                    ILazyFunction.checkInterrupts();
+                    try
+                    {
+                        for (int i = 0; i < params.size() - 1; i += 2)
+                        {
+                            if (params.get(i).evalValue(c, Context.BOOLEAN).getBoolean())
+                            {
+                                return LazyValue.TailValue.evalTail(params.get(i + 1), c, t);
+                            }
+                        }
+                        return params.size() % 2 == 1 ? LazyValue.TailValue.evalTail(params.get(params.size() - 1), c, t) : Value.NULL;
+                    }
+                    catch (RuntimeException exc)
+                    {
+                        throw handleCodeException(c, exc, this, token);
+                    }
+                });
+            }
+            case "return":
+            {
+                if (node.args.size() != 1)
+                {
+                    return ops.apply(node, expectedType);
+                }
+                LazyValue result = tailOp(node.args.get(0), requestedType, ops);
+                params.add(result);
+                return new TailPosition((c, t) -> f.lazyEval(c, t, this, token, params).evalValue(c, t), (c, t) -> {
+                    Object value = LazyValue.TailValue.evalTail(result, c, Context.NONE);
+                    if (value instanceof FunctionValue.TailCall)
+                    {
+                        return value;
+                    }
+                    // returns the value the regular way
+                    return f.lazyEval(c, t, this, token, List.of((cc, tt) -> (Value) value)).evalValue(c, t);
+                });
+            }
+            case "call":
+            {
+                node.args.forEach(n -> params.add(ops.apply(n, requestedType)));
+                return new TailPosition((c, t) -> f.lazyEval(c, t, this, token, params).evalValue(c, t), (c, t) -> {
+                    if (t == Context.SIGNATURE)
+                    {
+                        return f.lazyEval(c, t, this, token, params).evalValue(c, t);
+                    }
+                    List<Value> args = AbstractLazyFunction.unpackLazy(params, c, Context.NONE);
+                    FunctionArgument functionArgument = FunctionArgument.findIn(c, module, args, 0, false, true, token.callSite());
+                    return new FunctionValue.TailCall(c, functionArgument.function, functionArgument.args, t);
+                });
+            }
+            default:
+                return ops.apply(node, expectedType);
+        }
+    }
+
     private void validate(Context c, List<Token> rpn)
     {
         /*-
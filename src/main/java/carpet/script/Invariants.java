@@ -0,0 +1,409 @@
+package carpet.script;
+
+import carpet.script.Expression.ExpressionNode;
+import carpet.script.value.NumericValue;
+import carpet.script.value.StringValue;
+import carpet.script.value.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import javax.annotation.Nullable;
+
+/**
+ * Finds pure expressions that give the same value each time they are evaluated in a single run of a loop
+ * or a block of code, so that value can be computed once and reused.
+ * <p>
+ * Expressions hoisted out of loops read only variables that are not assigned anywhere in the loop, and blocks
+ * reuse values of repeated expressions in statements that don't assign any of their variables. Values are still
+ * computed in place, on first use, so code that never reaches them doesn't evaluate them, and are kept in the
+ * context of the running function, separately for each run of the loop or block. Since pure functions
+ * can still read the state of containers, entities or blocks passed to them, values are only reused
+ * if they, and all variables they were computed from, are numbers or strings.
+ * <p>
+ * Only expressions calling functions are reused, since operators on numbers and strings cost less to evaluate again
+ * than to look up. Reused values are copies, so binding them to variables doesn't change the kept value.
+ */
+final class Invariants
+{
+    private static final Object UNCACHED = new Object();
+    private static final Set<String> LOOPS = Set.of("loop", "while", "for", "c_for", "map", "filter", "first", "all", "reduce", "sort_key", "scan", "volume");
+    private static final Set<String> BLOCKS = Set.of(";", "then");
+    // functions writing to variables in their first argument
+    private static final Set<String> ASSIGNMENTS = Set.of("=", "assign", "+=", "append", "put", "delete");
+    private static final Set<String> SWAPS = Set.of("<>", "swap");
+    // functions accessing variables by their name
+    private static final Set<String> DYNAMIC = Set.of("var", "undef");
+    private static final Set<String> DEFINITIONS = Set.of("->", "define");
+    // functions evaluating their second argument later, when the iterator they return is read
+    private static final Set<String> DEFERRED = Set.of("lazy_map", "lazy_filter");
+    private static final Set<Context.Type> CACHEABLE = EnumSet.of(Context.Type.NONE, Context.Type.VOID, Context.Type.BOOLEAN, Context.Type.NUMBER, Context.Type.STRING);
+
+    /**
+     * Loop or block keeping values of invariant expressions for the duration of its run
+     */
+    private static final class Region
+    {
+        final ExpressionNode node;
+        final boolean loop;
+        final Set<String> written = new HashSet<>();
+        final List<Set<String>> statements = new ArrayList<>();
+        boolean dynamic = false;
+        final Map<String, Integer> slots = new HashMap<>();
+
+        Region(ExpressionNode node, boolean loop)
+        {
+            this.node = node;
+            this.loop = loop;
+        }
+
+        int slot(String key)
+        {
+            return slots.computeIfAbsent(key, k -> slots.size());
+        }
+    }
+
+    private record Link(Region region, int statement)
+    {
+    }
+
+    private record Slot(Region region, int index, List<String> variables)
+    {
+    }
+
+    /**
+     * Variables written to in a part of the code, and if it is a candidate for reuse, what it reads
+     */
+    private static final class Summary
+    {
+        final Set<String> written = new HashSet<>();
+        boolean dynamic = false;
+        // null if not pure
+        @Nullable
+        Set<String> reads = new HashSet<>();
+        String key = "";
+        // whether it calls any functions
+        boolean call = false;
+
+        void include(Summary other)
+        {
+            written.addAll(other.written);
+            dynamic |= other.dynamic;
+        }
+    }
+
+    private record Candidate(ExpressionNode node, Summary summary, List<Link> chain)
+    {
+    }
+
+    private final Map<ExpressionNode, Region> regions = new IdentityHashMap<>();
+    private final Map<ExpressionNode, Slot> slots = new IdentityHashMap<>();
+    private final List<Candidate> candidates = new ArrayList<>();
+    private final List<String> report = new ArrayList<>();
+    private final Expression expression;
+
+    private Invariants(Expression expression)
+    {
+        this.expression = expression;
+    }
+
+    static Invariants of(Expression expression, ExpressionNode root, @Nullable Consumer<String> logger)
+    {
+        Invariants invariants = new Invariants(expression);
+        invariants.visit(root, Collections.emptyList(), false);
+        invariants.hoist();
+        invariants.share();
+        invariants.regions.values().removeIf(region -> region.slots.isEmpty());
+        if (logger != null)
+        {
+            invariants.report.forEach(line -> logger.accept(" - " + line));
+        }
+        return invariants;
+    }
+
+    /**
+     * @return expressions that were hoisted out of loops or reused in blocks, with their lines
+     */
+    List<String> report()
+    {
+        return Collections.unmodifiableList(report);
+    }
+
+    /**
+     * Wraps the evaluation of the node, if it is an invariant expression or a loop or block holding them
+     */
+    LazyValue wrap(ExpressionNode node, LazyValue op)
+    {
+        Slot slot = slots.get(node);
+        if (slot != null)
+        {
+            Region region = slot.region();
+            int index = slot.index();
+            List<LazyValue> variables = slot.variables().stream().map(expression::variable).toList();
+            return (c, t) -> {
+                if (!CACHEABLE.contains(t))
+                {
+                    return op.evalValue(c, t);
+                }
+                Object[] values = c.invariants(region, region.slots.size());
+                Object cached = values[index];
+                if (cached instanceof final Value value)
+                {
+                    return value.reboundedTo(null);
+                }
+                Value result = op.evalValue(c, t);
+                if (cached == null)
+                {
+                    values[index] = isImmutable(result) && variables.stream().allMatch(v -> isImmutable(v.evalValue(c, Context.NONE))) ? result.reboundedTo(null) : UNCACHED;
+                }
+                return result;
+            };
+        }
+        Region region = regions.get(node);
+        if (region != null)
+        {
+            return (c, t) -> {
+                c.resetInvariants(region);
+                return op.evalValue(c, t);
+            };
+        }
+        return op;
+    }
+
+    private static boolean isImmutable(Value value)
+    {
+        return value instanceof NumericValue || value instanceof StringValue;
+    }
+
+    private Summary visit(ExpressionNode node, List<Link> chain, boolean target)
+    {
+        Summary summary = new Summary();
+        Token token = node.token;
+        if (node.op instanceof LazyValue.ContextFreeLazyValue)
+        {
+            if (node.op instanceof final LazyValue.Constant constant)
+            {
+                Value value = constant.get();
+                summary.key = value.getTypeString() + ":" + value.getString();
+            }
+            else
+            {
+                summary.reads = null;
+            }
+            return summary;
+        }
+        if (token.type == Token.TokenType.VARIABLE)
+        {
+            String name = token.surface;
+            // loops and other functions bind their own '_' variables, and any function can change globals
+            if (target || name.startsWith("_") || name.startsWith("global_"))
+            {
+                summary.reads = null;
+            }
+            else
+            {
+                summary.reads.add(name);
+                summary.key = name;
+            }
+            return summary;
+        }
+        if (!token.type.isFunctional())
+        {
+            summary.reads = null;
+            return summary;
+        }
+        String symbol = token.surface;
+        Fluff.EvalNode operation = expression.operation(token);
+        Region region = null;
+        if (token.type == Token.TokenType.FUNCTION && LOOPS.contains(symbol))
+        {
+            region = new Region(node, true);
+        }
+        else if (BLOCKS.contains(symbol))
+        {
+            region = new Region(node, false);
+        }
+        List<Summary> args = new ArrayList<>(node.args.size());
+        List<List<Link>> chains = new ArrayList<>(node.args.size());
+        for (int i = 0; i < node.args.size(); i++)
+        {
+            ExpressionNode arg = node.args.get(i);
+            boolean argTarget = target || (ASSIGNMENTS.contains(symbol) && i == 0) || SWAPS.contains(symbol);
+            List<Link> argChain = chain;
+            if (DEFINITIONS.contains(symbol) || (DEFERRED.contains(symbol) && i == 1))
+            {
+                // functions run in their own context, and deferred code outside of the runs of enclosing loops
+                argChain = Collections.emptyList();
+            }
+            else if (region != null)
+            {
+                argChain = new ArrayList<>(chain);
+                argChain.add(new Link(region, i));
+            }
+            Summary argSummary = visit(arg, argChain, argTarget);
+            if (argTarget)
+            {
+                collectVariables(arg, argSummary.written);
+            }
+            if (region != null)
+            {
+                region.statements.add(argSummary.written);
+            }
+            summary.include(argSummary);
+            args.add(argSummary);
+            chains.add(argChain);
+        }
+        if (token.type == Token.TokenType.FUNCTION && DYNAMIC.contains(symbol))
+        {
+            summary.dynamic = true;
+        }
+        if (region != null)
+        {
+            region.written.addAll(summary.written);
+            region.dynamic = summary.dynamic;
+            regions.put(node, region);
+        }
+        boolean pure = !target && operation != null && operation.pure() && region == null
+                && !DEFINITIONS.contains(symbol) && !symbol.equals("...") && args.stream().allMatch(a -> a.reads != null);
+        if (pure)
+        {
+            args.forEach(a -> summary.reads.addAll(a.reads));
+            summary.call = token.type == Token.TokenType.FUNCTION || args.stream().anyMatch(a -> a.call);
+            summary.key = token.type + " " + symbol + "(" + args.stream().map(a -> a.key).collect(Collectors.joining(", ")) + ")";
+            return summary;
+        }
+        summary.reads = null;
+        // largest pure parts of the code are the candidates
+        for (int i = 0; i < args.size(); i++)
+        {
+            Summary arg = args.get(i);
+            if (arg.reads != null && !arg.reads.isEmpty() && arg.call && !chains.get(i).isEmpty())
+            {
+                candidates.add(new Candidate(node.args.get(i), arg, chains.get(i)));
+            }
+        }
+        return summary;
+    }
+
+    private static void collectVariables(ExpressionNode node, Set<String> variables)
+    {
+        if (node.token.type == Token.TokenType.VARIABLE)
+        {
+            variables.add(node.token.surface);
+        }
+        node.args.forEach(arg -> collectVariables(arg, variables));
+    }
+
+    private static boolean independent(Set<String> reads, Set<String> written)
+    {
+        return reads.stream().noneMatch(written::contains);
+    }
+
+    /**
+     * Moves expressions out of the outermost loops that don't change their variables
+     */
+    private void hoist()
+    {
+        for (Candidate candidate : candidates)
+        {
+            Region target = null;
+            for (int i = candidate.chain().size() - 1; i >= 0; i--)
+            {
+                Region region = candidate.chain().get(i).region();
+                if (region.dynamic || !independent(candidate.summary().reads, region.written))
+                {
+                    break;
+                }
+                if (region.loop)
+                {
+                    target = region;
+                }
+            }
+            if (target != null)
+            {
+                assign(candidate, target);
+                report.add("Hoisted " + describe(candidate.node()) + " out of '" + target.node.token.surface + "' at line " + (target.node.token.lineno + 1));
+            }
+        }
+    }
+
+    /**
+     * Reuses values of expressions repeated within a block of code
+     */
+    private void share()
+    {
+        for (Candidate candidate : candidates)
+        {
+            if (slots.containsKey(candidate.node()))
+            {
+                continue;
+            }
+            for (int i = candidate.chain().size() - 1; i >= 0; i--)
+            {
+                Region block = candidate.chain().get(i).region();
+                if (block.loop)
+                {
+                    continue;
+                }
+                List<Candidate> repeated = new ArrayList<>();
+                int first = Integer.MAX_VALUE;
+                int last = -1;
+                for (Candidate other : candidates)
+                {
+                    if (slots.containsKey(other.node()) || !other.summary().key.equals(candidate.summary().key))
+                    {
+                        continue;
+                    }
+                    for (Link link : other.chain())
+                    {
+                        if (link.region() == block)
+                        {
+                            repeated.add(other);
+                            first = Math.min(first, link.statement());
+                            last = Math.max(last, link.statement());
+                        }
+                    }
+                }
+                if (repeated.size() < 2 || block.dynamic || !independent(candidate.summary().reads, block.statements.subList(first, last + 1).stream().flatMap(Set::stream).collect(Collectors.toSet())))
+                {
+                    continue;
+                }
+                repeated.forEach(other -> assign(other, block));
+                report.add("Reusing " + describe(candidate.node()) + " evaluated " + repeated.size() + " times in block at line " + (block.node.token.lineno + 1));
+                break;
+            }
+        }
+    }
+
+    private void assign(Candidate candidate, Region region)
+    {
+        int index = region.slot(candidate.summary().key);
+        slots.put(candidate.node(), new Slot(region, index, List.copyOf(candidate.summary().reads)));
+    }
+
+    private static String describe(ExpressionNode node)
+    {
+        Token token = node.token;
+        if (node.op instanceof final LazyValue.Constant constant)
+        {
+            Value value = constant.get();
+            return value instanceof StringValue ? "'" + value.getString() + "'" : value.getString();
+        }
+        return switch (token.type)
+        {
+            case OPERATOR -> "(" + describe(node.args.get(0)) + " " + token.surface + " " + describe(node.args.get(1)) + ")";
+            case UNARY_OPERATOR -> token.surface + describe(node.args.get(0));
+            case FUNCTION -> token.surface + "(" + node.args.stream().map(Invariants::describe).collect(Collectors.joining(", ")) + ")";
+            default -> token.surface;
+        };
+    }
+}
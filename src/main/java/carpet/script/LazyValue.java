@@ -1,7 +1,11 @@
 package carpet.script;
 
+import carpet.script.value.FunctionValue;
+import carpet.script.value.NumericValue;
 import carpet.script.value.Value;
 
+import javax.annotation.Nullable;
+
 /**
  * LazyNumber interface created for lazily evaluated functions
  */
@@ -66,4 +70,92 @@ public interface LazyValue
             return result.fromConstant();
         }
     }
+
+    /**
+     * Expression in tail position of a function body. Calls to functions that finish its evaluation can be
+     * returned as {@link FunctionValue.TailCall} instead, so the calling function makes them after its own body
+     * is done, without growing the stack
+     */
+    interface TailValue extends LazyValue
+    {
+        /**
+         * @return value of the expression, or the call that is left to make to get it
+         */
+        Object evalTail(Context c, Context.Type type);
+
+        static Object evalTail(LazyValue lv, Context c, Context.Type type)
+        {
+            return lv instanceof final TailValue tail ? tail.evalTail(c, type) : lv.evalValue(c, type);
+        }
+    }
+
+    /**
+     * Mutable variable binding, so loops can update their loop variables in place
+     * instead of creating a new binding for each iteration
+     */
+    class Binding implements LazyValue
+    {
+        @Nullable
+        protected final String name;
+        protected Value value;
+
+        /**
+         * @param name if not null, the variable name the value gets bound to when read
+         */
+        public Binding(@Nullable String name, Value value)
+        {
+            this.name = name;
+            this.value = value;
+        }
+
+        public void set(Value value)
+        {
+            this.value = value;
+        }
+
+        @Override
+        public Value evalValue(Context c, Context.Type type)
+        {
+            return name == null ? value : value.bindTo(name);
+        }
+
+        /**
+         * @return binding to the current value, unaffected by further updates to this binding
+         */
+        public LazyValue freeze()
+        {
+            Value current = evalValue(null, Context.NONE);
+            return (c, t) -> current;
+        }
+    }
+
+    /**
+     * Binding of a loop counter. Numeric value is only created when the variable is actually read,
+     * at most once per each update
+     */
+    class NumericBinding extends Binding
+    {
+        private long number;
+
+        public NumericBinding(String name)
+        {
+            super(name, null);
+        }
+
+        public void set(long number)
+        {
+            this.number = number;
+            this.value = null;
+        }
+
+        @Override
+        public Value evalValue(Context c, Context.Type type)
+        {
+            if (value == null)
+            {
+                value = new NumericValue(number).bindTo(name);
+            }
+            return value;
+        }
+    }
 }
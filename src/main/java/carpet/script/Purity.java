@@ -0,0 +1,113 @@
+package carpet.script;
+
+import carpet.script.Expression.ExpressionNode;
+import carpet.script.exception.InternalExpressionException;
+import carpet.script.value.FunctionValue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Checks if calls to a user defined function can't change anything outside of their own frame, so they can run
+ * on any thread and in any order. Code of the function, and of the functions it calls by name, may only use
+ * pure built-in functions, control flow and loops, and reads and assignments of its own local variables.
+ * Pure built-in functions that keep state shared between calls, like the seeded samplers of perlin and simplex,
+ * need to keep it in thread-safe structures.
+ */
+public final class Purity
+{
+    // functions that only direct the evaluation of their arguments
+    private static final Set<String> CONTROL = Set.of(";", "then", "if", "&&", "and", "||", "or", "return", "break", "continue",
+            "loop", "while", "c_for", "for", "map", "filter", "first", "all", "reduce", "sort_key", "lazy_map", "lazy_filter");
+    private static final Set<String> ASSIGNMENTS = Set.of("=", "assign");
+    // marked as pure, but output text or wait for other threads
+    private static final Set<String> EXCLUDED = Set.of("print", "task_value", "task_join", "task_completed");
+
+    private Purity()
+    {
+    }
+
+    public static boolean isPure(Context c, FunctionValue function)
+    {
+        return isPure(c, function, new HashSet<>());
+    }
+
+    private static boolean isPure(Context c, FunctionValue function, Set<FunctionValue> checked)
+    {
+        if (!checked.add(function))
+        {
+            // recursive call, the rest of its code is checked already
+            return true;
+        }
+        ExpressionNode definition = function.getToken().node;
+        if (definition == null || definition.args == null || definition.args.isEmpty())
+        {
+            return false;
+        }
+        return isPure(c, function.getExpression(), definition.args.get(definition.args.size() - 1), checked);
+    }
+
+    private static boolean isPure(Context c, Expression expression, ExpressionNode node, Set<FunctionValue> checked)
+    {
+        if (node.op instanceof LazyValue.ContextFreeLazyValue)
+        {
+            return true;
+        }
+        Token token = node.token;
+        if (token.type == Token.TokenType.VARIABLE)
+        {
+            // reading a global that is not defined yet defines it in the host
+            return !token.surface.startsWith("global_");
+        }
+        if (!token.type.isFunctional())
+        {
+            return false;
+        }
+        String symbol = token.surface;
+        if (ASSIGNMENTS.contains(symbol))
+        {
+            ExpressionNode target = node.args.get(0);
+            if (target.token.type != Token.TokenType.VARIABLE || target.token.surface.startsWith("global_"))
+            {
+                return false;
+            }
+            return isPure(c, expression, node.args.get(1), checked);
+        }
+        if (token.type == Token.TokenType.FUNCTION && symbol.equals("call"))
+        {
+            if (node.args.isEmpty() || !(node.args.get(0).op instanceof final LazyValue.Constant name))
+            {
+                return false;
+            }
+            FunctionValue called;
+            try
+            {
+                called = c.host.getAssertFunction(expression.module, name.get().getString());
+            }
+            catch (InternalExpressionException ignored)
+            {
+                return false;
+            }
+            if (!isPure(c, called, checked))
+            {
+                return false;
+            }
+        }
+        else
+        {
+            Fluff.EvalNode operation = expression.operation(token);
+            if (operation == null || EXCLUDED.contains(symbol) || !(operation.pure() || CONTROL.contains(symbol)))
+            {
+                return false;
+            }
+        }
+        for (ExpressionNode arg : node.args)
+        {
+            if (!isPure(c, expression, arg, checked))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -3,6 +3,7 @@ package carpet.script;
 import carpet.script.external.Carpet;
 import carpet.script.external.Vanilla;
 import carpet.script.utils.AppStoreManager;
+import carpet.script.utils.BoundedCache;
 import carpet.script.exception.CarpetExpressionException;
 import carpet.script.value.FunctionValue;
 import carpet.script.value.NumericValue;
@@ -154,6 +155,8 @@ public class ScriptCommand
         LiteralArgumentBuilder<CommandSourceStack> b = literal("globals").
                 executes(context -> listGlobals(context, false)).
                 then(literal("all").executes(context -> listGlobals(context, true)));
+        LiteralArgumentBuilder<CommandSourceStack> z = literal("optimizations").
+                executes(ScriptCommand::listOptimizations);
         LiteralArgumentBuilder<CommandSourceStack> o = literal("stop").
                 executes((cc) -> {
                     ss(cc).stopAll = true;
@@ -299,8 +302,10 @@ public class ScriptCommand
                         //then(literal("optimized").executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, true, false, false, null, Expression.LoadOverride.OPTIMIZED))).
                         //then(literal("functional").executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, true, false, false, null, Expression.LoadOverride.FUNCTIONAL))).
                         //then(literal("functional_optimized").executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, true, false, false, null, Expression.LoadOverride.FUNCTIONAL_OPTIMIZED))).
+                        then(literal("direct").executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, true, false, false, null, Expression.LoadOverride.DIRECT))).
                         then(literal("global").
-                                executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, false, false, false, null, Expression.LoadOverride.DEFAULT))
+                                executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, false, false, false, null, Expression.LoadOverride.DEFAULT)).
+                                then(literal("direct").executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, false, false, false, null, Expression.LoadOverride.DIRECT)))
                                         //.
                                 //then(literal("canonical").executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, false, false, false, null, Expression.LoadOverride.CANONICAL))).
                                 //then(literal("optimized").executes((cc) -> ss(cc).addScriptHost(cc.getSource(), StringArgumentType.getString(cc, "app"), null, false, false, false, null, Expression.LoadOverride.OPTIMIZED))).
@@ -365,6 +370,14 @@ public class ScriptCommand
                             return success ? 1 : 0;
                         }));
 
+        LiteralArgumentBuilder<CommandSourceStack> k = literal("caches").requires(Vanilla::ServerPlayer_canScriptACE).
+                executes(ScriptCommand::listCaches).
+                then(literal("flush").
+                        executes((cc) -> flushCaches(cc, null)).
+                        then(argument("cache", StringArgumentType.word()).
+                                suggests((cc, bb) -> suggest(BoundedCache.all().stream().map(cache -> cache.name), bb)).
+                                executes((cc) -> flushCaches(cc, StringArgumentType.getString(cc, "cache")))));
+
         LiteralArgumentBuilder<CommandSourceStack> x = literal("explain").requires(Vanilla::ServerPlayer_canScriptACE).
                         executes((cc) -> explain(cc, null, null, null)).
                         then(literal("expression").
@@ -387,13 +400,13 @@ public class ScriptCommand
 
         dispatcher.register(literal("script").
                 requires(Vanilla::ServerPlayer_canScriptGeneral).
-                then(b).then(u).then(o).then(l).then(s).then(c).then(h).then(i).then(e).then(t).then(a).then(f).then(q).then(d).then(r));
+                then(b).then(z).then(u).then(o).then(l).then(s).then(c).then(h).then(i).then(e).then(t).then(a).then(f).then(q).then(d).then(r).then(k));
         dispatcher.register(literal("script").
                 requires(Vanilla::ServerPlayer_canScriptGeneral).
                 then(literal("in").
                         then(argument("app", StringArgumentType.word()).
                                 suggests((cc, bb) -> suggest(ss(cc).modules.keySet(), bb)).
-                                then(b).then(u).then(o).then(l).then(s).then(c).then(h).then(i).then(e).then(t))));
+                                then(b).then(z).then(u).then(o).then(l).then(s).then(c).then(h).then(i).then(e).then(t))));
     }
 
     private static CarpetScriptHost getHost(CommandContext<CommandSourceStack> context) throws CommandSyntaxException
@@ -441,6 +454,48 @@ public class ScriptCommand
         return 1;
     }
 
+    private static int listCaches(CommandContext<CommandSourceStack> context)
+    {
+        CommandSourceStack source = context.getSource();
+        Carpet.Messenger_message(source, "w Scarpet caches:");
+        for (BoundedCache<?, ?> cache : BoundedCache.all())
+        {
+            long hits = cache.hits();
+            long lookups = hits + cache.misses();
+            Carpet.Messenger_message(source, "w  - " + cache.name + ": ", "y " + cache.size() + "/" + cache.maxSize,
+                    "w  entries, hit rate: ", "y " + (lookups == 0 ? "-" : String.format(Locale.ROOT, "%.1f%%", 100.0 * hits / lookups)),
+                    "w , evictions: ", "y " + cache.evictions());
+        }
+        return 1;
+    }
+
+    private static int flushCaches(CommandContext<CommandSourceStack> context, @Nullable String name)
+    {
+        CommandSourceStack source = context.getSource();
+        List<BoundedCache<?, ?>> caches;
+        if (name == null)
+        {
+            caches = BoundedCache.all();
+        }
+        else
+        {
+            BoundedCache<?, ?> cache = BoundedCache.get(name);
+            if (cache == null)
+            {
+                Carpet.Messenger_message(source, "r Unknown cache: " + name);
+                return 0;
+            }
+            caches = List.of(cache);
+        }
+        int removed = 0;
+        for (BoundedCache<?, ?> cache : caches)
+        {
+            removed += cache.clear();
+        }
+        Carpet.Messenger_message(source, "w Removed " + removed + " cached entries");
+        return removed;
+    }
+
     private static int listGlobals(CommandContext<CommandSourceStack> context, boolean all) throws CommandSyntaxException
     {
         CarpetScriptHost host = getHost(context);
@@ -483,6 +538,21 @@ public class ScriptCommand
         return 1;
     }
 
+    private static int listOptimizations(CommandContext<CommandSourceStack> context) throws CommandSyntaxException
+    {
+        CarpetScriptHost host = getHost(context);
+        CommandSourceStack source = context.getSource();
+        CarpetScriptServer scriptServer = ss(context);
+        List<String> reused = host.reusedExpressions;
+        Carpet.Messenger_message(source, "lb Reused expressions" + ((host == scriptServer.globalHost) ? ":" : " in " + host.getVisualName() + ":"));
+        if (reused.isEmpty())
+        {
+            Carpet.Messenger_message(source, "gi  none, or the app is not loaded with optimizations");
+        }
+        reused.forEach(line -> Carpet.Messenger_message(source, "w  - " + line));
+        return reused.size();
+    }
+
     public static int handleCall(CommandSourceStack source, CarpetScriptHost host, Supplier<Value> call)
     {
         try
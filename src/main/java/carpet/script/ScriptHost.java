@@ -22,8 +22,10 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
 
@@ -32,14 +34,21 @@ public abstract class ScriptHost
     private static final Map<Long, Random> randomizers = new Long2ObjectOpenHashMap<>();
 
     public static Thread mainThread = null;
-    private final Map<Value, ThreadPoolExecutor> executorServices = new HashMap<>();
+    private final Map<Value, TaskPool> executorServices = new HashMap<>();
+    private final Map<Value, PoolSettings> poolSettings = new HashMap<>();
     private final Map<Value, Object> locks = new ConcurrentHashMap<>();
+    @Nullable
+    private ForkJoinPool parallelPool;
     private final ScriptServer scriptServer;
     protected boolean inTermination = false;
     public boolean strict;
+    // whether task pools without their own settings run tasks on virtual threads
+    public boolean virtualTasks;
     public Expression.LoadOverride loadOverrides;
     @Nullable
     public Expression.ExpressionNode root;
+    // expressions the optimizations reuse in the code of the app
+    public List<String> reusedExpressions = List.of();
 
     private final Set<String> deprecations = new HashSet<>();
 
@@ -114,6 +123,7 @@ public abstract class ScriptHost
 
     protected final Map<String, ScriptHost> userHosts = new Object2ObjectOpenHashMap<>();
     private final Map<Module, ModuleData> moduleData = new HashMap<>(); // marking imports
+    private final AtomicLong functionGeneration = new AtomicLong(); // changes with any function or import
     private final Map<String, Module> modules = new HashMap<>();
 
     protected ScriptHost parent;
@@ -215,6 +225,7 @@ public abstract class ScriptHost
                 targetData.futureImports.put(identifier, sourceData);
             }
         }
+        functionGeneration.incrementAndGet();
     }
 
     public Stream<String> availableImports(String moduleName)
@@ -235,6 +246,15 @@ public abstract class ScriptHost
 
     protected abstract void runModuleCode(Context c, Module module); // this should be shell out in the executor
 
+    /**
+     * @return counter of changes to functions and imports of all modules, so functions resolved by their name
+     * can be reused for as long as it stays the same
+     */
+    public long functionGeneration()
+    {
+        return functionGeneration.get();
+    }
+
     @Nullable
     public FunctionValue getFunction(String name)
     {
@@ -378,6 +398,7 @@ public abstract class ScriptHost
         ModuleData data = getModuleData(module);
         data.globalFunctions.entrySet().removeIf(e -> e.getKey().startsWith(prefix));
         data.functionImports.entrySet().removeIf(e -> e.getKey().startsWith(prefix));
+        functionGeneration.incrementAndGet();
     }
 
     public void delFunction(Module module, String funName)
@@ -385,6 +406,7 @@ public abstract class ScriptHost
         ModuleData data = getModuleData(module);
         data.globalFunctions.remove(funName);
         data.functionImports.remove(funName);
+        functionGeneration.incrementAndGet();
     }
 
     public void delGlobalVariableWithPrefix(Module module, String prefix)
@@ -399,6 +421,7 @@ public abstract class ScriptHost
         ModuleData data = getModuleData(module);
         data.globalFunctions.remove(varName);
         data.functionImports.remove(varName);
+        functionGeneration.incrementAndGet();
     }
 
     private ModuleData getModuleData(Module module)
@@ -419,6 +442,7 @@ public abstract class ScriptHost
     public void addUserDefinedFunction(Context ctx, Module module, String name, FunctionValue fun)
     {
         getModuleData(module).globalFunctions.put(name, fun);
+        functionGeneration.incrementAndGet();
     }
 
     public void setGlobalVariable(Module module, String name, LazyValue lv)
@@ -468,6 +492,7 @@ public abstract class ScriptHost
         // fixing imports
         host.moduleData.forEach((module, data) -> data.setImportsBasedOn(host, this.moduleData.get(data.parent)));
         host.root = this.root;
+        host.reusedExpressions = this.reusedExpressions;
     }
 
     public synchronized void handleExpressionException(String msg, ExpressionException exc)
@@ -482,29 +507,100 @@ public abstract class ScriptHost
         return locks.computeIfAbsent(name, n -> new Object());
     }
 
-    public ThreadPoolExecutor getExecutor(Value pool)
+    public TaskPool getExecutor(Value pool)
     {
         if (inTermination)
         {
             return null;
         }
-        return executorServices.computeIfAbsent(pool, v -> (ThreadPoolExecutor) Executors.newCachedThreadPool());
+        return executorServices.computeIfAbsent(pool, v -> {
+            PoolSettings settings = poolSettings.get(v);
+            return settings == null ? new TaskPool(virtualTasks, 0) : new TaskPool(settings.virtual(), settings.limit());
+        });
+    }
+
+    /**
+     * @return pool running pieces of pmap and preduce of this app, or null if the app is closing, in which case
+     * they should run on the current thread
+     */
+    @Nullable
+    public synchronized ForkJoinPool getParallelPool()
+    {
+        if (inTermination)
+        {
+            return null;
+        }
+        if (parallelPool == null)
+        {
+            parallelPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(), pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("scarpet-parallel-" + thread.getPoolIndex());
+                return thread;
+            }, null, false);
+        }
+        return parallelPool;
+    }
+
+    private record PoolSettings(boolean virtual, int limit)
+    {
+    }
+
+    /**
+     * Changes the kind of threads and the limit of running tasks of the pool, replacing it with a pool
+     * with these settings, which keeps the counts of tasks of the previous one
+     */
+    public void configurePool(Value pool, boolean virtual, int limit)
+    {
+        if (inTermination)
+        {
+            return;
+        }
+        TaskPool current = executorServices.get(pool);
+        if (current != null)
+        {
+            if (current.active() > 0 || current.queued() > 0)
+            {
+                throw new InternalExpressionException("Cannot change settings of a task pool while it has running tasks");
+            }
+            current.shutdown();
+        }
+        poolSettings.put(pool, new PoolSettings(virtual, limit));
+        executorServices.put(pool, new TaskPool(virtual, limit, current));
+    }
+
+    @Nullable
+    public TaskPool getPool(Value pool)
+    {
+        return executorServices.get(pool);
+    }
+
+    public Map<Value, TaskPool> getPools()
+    {
+        return executorServices;
     }
 
     public int taskCount()
     {
-        return executorServices.values().stream().map(ThreadPoolExecutor::getActiveCount).reduce(0, Integer::sum);
+        return executorServices.values().stream().map(TaskPool::active).reduce(0, Integer::sum);
     }
 
     public int taskCount(Value pool)
     {
-        return executorServices.containsKey(pool) ? executorServices.get(pool).getActiveCount() : 0;
+        return executorServices.containsKey(pool) ? executorServices.get(pool).active() : 0;
     }
 
     public void onClose()
     {
-        inTermination = true;
-        executorServices.values().forEach(ThreadPoolExecutor::shutdown);
+        synchronized (this)
+        {
+            inTermination = true;
+            if (parallelPool != null)
+            {
+                parallelPool.shutdownNow();
+                parallelPool = null;
+            }
+        }
+        executorServices.values().forEach(TaskPool::shutdown);
         for (ScriptHost uh : userHosts.values())
         {
             uh.onClose();
@@ -12,4 +12,9 @@ public abstract class ScriptServer
     public final Map<Value, Value> systemGlobals = new ConcurrentHashMap<>();
 
     public abstract Path resolveResource(String suffix);
+
+    /**
+     * @return version of the scripting engine, anything stored that depends on how scripts are processed is discarded when it changes
+     */
+    public abstract String getVersion();
 }
@@ -0,0 +1,204 @@
+package carpet.script;
+
+import carpet.script.value.BooleanValue;
+import carpet.script.value.MapValue;
+import carpet.script.value.NumericValue;
+import carpet.script.value.StringValue;
+import carpet.script.value.Value;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+/**
+ * Executor running tasks of an app submitted to one pool, either on platform threads, or on virtual threads,
+ * which are cheap enough to have one per task even when tasks mostly wait on sleep or I/O. Pools can limit
+ * the number of tasks running at once, with the rest waiting in order of submission, and keep track
+ * of their tasks to report them to the app.
+ */
+public class TaskPool extends AbstractExecutorService
+{
+    public final boolean virtual;
+    public final int limit;
+    private final ExecutorService executor;
+    // for virtual threads, which are not reused, so their number can't be limited by the executor itself
+    @Nullable
+    private final Semaphore permits;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder latencyNanos = new LongAdder();
+
+    /**
+     * @param limit maximum number of tasks running at once, or 0 for no limit
+     */
+    public TaskPool(boolean virtual, int limit)
+    {
+        this(virtual, limit, null);
+    }
+
+    /**
+     * @param previous pool with other settings this one replaces, which counts of tasks are carried over
+     */
+    public TaskPool(boolean virtual, int limit, @Nullable TaskPool previous)
+    {
+        if (previous != null)
+        {
+            submitted.add(previous.submitted.sum());
+            started.add(previous.started.sum());
+            completed.add(previous.completed.sum());
+            latencyNanos.add(previous.latencyNanos.sum());
+        }
+        this.virtual = virtual;
+        this.limit = limit;
+        if (virtual)
+        {
+            executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("scarpet-task-", 0).factory());
+            permits = limit > 0 ? new Semaphore(limit, true) : null;
+        }
+        else
+        {
+            if (limit > 0)
+            {
+                ThreadPoolExecutor limited = new ThreadPoolExecutor(limit, limit, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+                limited.allowCoreThreadTimeOut(true);
+                executor = limited;
+            }
+            else
+            {
+                executor = Executors.newCachedThreadPool();
+            }
+            permits = null;
+        }
+    }
+
+    @Override
+    public void execute(Runnable command)
+    {
+        long submittedAt = System.nanoTime();
+        submitted.increment();
+        try
+        {
+            executor.execute(() -> run(command, submittedAt));
+        }
+        catch (RuntimeException e)
+        {
+            submitted.decrement();
+            throw e;
+        }
+    }
+
+    private void run(Runnable command, long submittedAt)
+    {
+        if (permits != null)
+        {
+            try
+            {
+                permits.acquire();
+            }
+            catch (InterruptedException e)
+            {
+                // pool shut down before the task had a chance to run
+                submitted.decrement();
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        started.increment();
+        try
+        {
+            command.run();
+        }
+        finally
+        {
+            latencyNanos.add(System.nanoTime() - submittedAt);
+            completed.increment();
+            if (permits != null)
+            {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * @return number of tasks running at the moment
+     */
+    public int active()
+    {
+        return (int) (started.sum() - completed.sum());
+    }
+
+    /**
+     * @return number of tasks waiting for other tasks to finish before they can start
+     */
+    public int queued()
+    {
+        return (int) Math.max(0, submitted.sum() - started.sum());
+    }
+
+    public long completed()
+    {
+        return completed.sum();
+    }
+
+    /**
+     * @return average time from submitting a task to its completion, in milliseconds
+     */
+    public double meanLatency()
+    {
+        long count = completed.sum();
+        return count == 0 ? 0.0 : latencyNanos.sum() / 1e6 / count;
+    }
+
+    public Value stats()
+    {
+        Map<Value, Value> stats = new HashMap<>();
+        stats.put(StringValue.of("virtual"), BooleanValue.of(virtual));
+        stats.put(StringValue.of("limit"), new NumericValue(limit));
+        stats.put(StringValue.of("active"), new NumericValue(active()));
+        stats.put(StringValue.of("queued"), new NumericValue(queued()));
+        stats.put(StringValue.of("completed"), new NumericValue(completed()));
+        stats.put(StringValue.of("mean_latency"), new NumericValue(meanLatency()));
+        return MapValue.wrap(stats);
+    }
+
+    @Override
+    public void shutdown()
+    {
+        executor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow()
+    {
+        return executor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown()
+    {
+        return executor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated()
+    {
+        return executor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException
+    {
+        return executor.awaitTermination(timeout, unit);
+    }
+}
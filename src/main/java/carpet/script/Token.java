@@ -39,6 +39,9 @@ public class Token implements Comparable<Token> {
     @Nullable
     public Expression.ExpressionNode node = null;
 
+    @Nullable
+    private CallSiteCache callSite = null;
+
     public static final Token NONE = new Token();
 
     public Token morphedInto(TokenType newType, String newSurface) {
@@ -53,6 +56,19 @@ public class Token implements Comparable<Token> {
         return created;
     }
 
+    /**
+     * @return cache of functions called by name from that token
+     */
+    public CallSiteCache callSite() {
+        // racing threads may create separate caches, which only costs an extra lookup
+        CallSiteCache cache = callSite;
+        if (cache == null) {
+            cache = new CallSiteCache();
+            callSite = cache;
+        }
+        return cache;
+    }
+
     public void swapPlace(Token other) {
         int order = other.ordinal;
         other.ordinal = ordinal;
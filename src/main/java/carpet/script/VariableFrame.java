@@ -0,0 +1,413 @@
+package carpet.script;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+import javax.annotation.Nullable;
+
+/**
+ * Array backed storage of local variables of a single execution frame.
+ * <p>
+ * Variable names are resolved to slot indices once, when the code is parsed, so that reading and writing
+ * locals at runtime is a plain array access. Slots are assigned per {@link Layout}, one for each parsed expression,
+ * so frames only grow to the number of names used by the code that runs in them. A frame takes the layout of the
+ * first code that accesses it by slot. Code of other expressions, since scarpet variables are dynamically scoped,
+ * and the dynamic parts of the language, like {@code var()}, {@code vars()} or {@code undef()}, access it by name,
+ * which finds the slot in the layout of the frame, or keeps the variable aside if the layout doesn't have that name.
+ * <p>
+ * Variables used by the built-in loops and higher order functions have the same slots in all layouts.
+ * Frames are also maps of variable names to values, so code using {@link Context#variables} as a map keeps working.
+ */
+public class VariableFrame extends AbstractMap<String, LazyValue>
+{
+    private static final String[] FIXED = {"_", "_i", "_a", "_x", "_y", "_z"};
+    // layout of frames that were not used by any code yet, with only the fixed slots
+    private static final Layout FIXED_LAYOUT = new Layout();
+
+    /**
+     * Slots of the variables used by the built-in loops and higher order functions
+     */
+    public static final int ELEMENT = 0;
+    public static final int INDEX = 1;
+    public static final int ACCUMULATOR = 2;
+    public static final int X = 3;
+    public static final int Y = 4;
+    public static final int Z = 5;
+
+    /**
+     * Slots of variable names of a single expression. Slots are only added while the expression is parsed.
+     */
+    public static final class Layout
+    {
+        private final Map<String, Integer> slots = new ConcurrentHashMap<>();
+        private volatile String[] names = FIXED;
+
+        public Layout()
+        {
+            for (int i = 0; i < FIXED.length; i++)
+            {
+                slots.put(FIXED[i], i);
+            }
+        }
+
+        /**
+         * @return slot for a given variable name, assigning a new one if the name wasn't seen before
+         */
+        public synchronized int slotOf(String name)
+        {
+            Integer slot = slots.get(name);
+            if (slot != null)
+            {
+                return slot;
+            }
+            String[] extended = Arrays.copyOf(names, names.length + 1);
+            extended[names.length] = name;
+            names = extended;
+            slots.put(name, names.length - 1);
+            return names.length - 1;
+        }
+
+        /**
+         * @return slot for a given variable name, or -1 if the expression doesn't use it
+         */
+        public int existingSlotOf(String name)
+        {
+            Integer slot = slots.get(name);
+            return slot == null ? -1 : slot;
+        }
+
+        public String nameOf(int slot)
+        {
+            return names[slot];
+        }
+
+        public int size()
+        {
+            return names.length;
+        }
+    }
+
+    @Nullable
+    private Layout layout;
+    private LazyValue[] values = new LazyValue[FIXED.length];
+    // variables set by name that the layout doesn't have a slot for
+    @Nullable
+    private Map<String, LazyValue> others;
+
+    public VariableFrame()
+    {
+    }
+
+    public VariableFrame(Map<String, LazyValue> variables)
+    {
+        putAll(variables);
+    }
+
+    /**
+     * @return whether this frame uses the layout, taking it if the frame didn't have one yet
+     */
+    public boolean adopt(Layout layout)
+    {
+        if (this.layout == layout)
+        {
+            return true;
+        }
+        if (this.layout != null)
+        {
+            return false;
+        }
+        this.layout = layout;
+        if (others != null)
+        {
+            others.entrySet().removeIf(e -> {
+                int slot = layout.existingSlotOf(e.getKey());
+                if (slot < 0)
+                {
+                    return false;
+                }
+                setSlot(slot, e.getValue());
+                return true;
+            });
+        }
+        return true;
+    }
+
+    private Layout layout()
+    {
+        return layout != null ? layout : FIXED_LAYOUT;
+    }
+
+    private int slotOf(String name)
+    {
+        return layout().existingSlotOf(name);
+    }
+
+    private String nameOf(int slot)
+    {
+        return layout().nameOf(slot);
+    }
+
+    private void setSlot(int slot, @Nullable LazyValue lv)
+    {
+        if (slot >= values.length)
+        {
+            if (lv == null)
+            {
+                return;
+            }
+            // at most as many slots as the layout has names
+            values = Arrays.copyOf(values, Math.max(slot + 1, Math.min(values.length * 2, layout().size())));
+        }
+        values[slot] = lv;
+    }
+
+    /**
+     * @param slot one of the slots of variables used by built-in loops, like {@link #ELEMENT}
+     */
+    public LazyValue get(int slot)
+    {
+        return values[slot];
+    }
+
+    /**
+     * @param slot one of the slots of variables used by built-in loops, like {@link #ELEMENT}
+     */
+    public void set(int slot, LazyValue lv)
+    {
+        values[slot] = lv;
+    }
+
+    /**
+     * Reads a variable of code using the layout, by slot if the frame uses that layout, or by name otherwise
+     */
+    @Nullable
+    public LazyValue get(Layout layout, int slot, String name)
+    {
+        if (adopt(layout))
+        {
+            return slot < values.length ? values[slot] : null;
+        }
+        return get(name);
+    }
+
+    public void set(Layout layout, int slot, String name, LazyValue lv)
+    {
+        if (adopt(layout))
+        {
+            setSlot(slot, lv);
+            return;
+        }
+        put(name, lv);
+    }
+
+    @Nullable
+    public LazyValue get(String name)
+    {
+        int slot = slotOf(name);
+        if (slot >= 0)
+        {
+            return slot < values.length ? values[slot] : null;
+        }
+        return others == null ? null : others.get(name);
+    }
+
+    @Override
+    public LazyValue get(Object name)
+    {
+        return name instanceof final String string ? get(string) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object name)
+    {
+        return get(name) != null;
+    }
+
+    @Override
+    public LazyValue put(String name, LazyValue lv)
+    {
+        int slot = slotOf(name);
+        if (slot >= 0)
+        {
+            LazyValue previous = slot < values.length ? values[slot] : null;
+            setSlot(slot, lv);
+            return previous;
+        }
+        if (lv == null)
+        {
+            return others == null ? null : others.remove(name);
+        }
+        if (others == null)
+        {
+            others = new HashMap<>();
+        }
+        return others.put(name, lv);
+    }
+
+    @Override
+    public LazyValue remove(Object name)
+    {
+        return name instanceof final String string ? put(string, null) : null;
+    }
+
+    @Override
+    public void clear()
+    {
+        Arrays.fill(values, null);
+        others = null;
+    }
+
+    public void removeIf(Predicate<String> predicate)
+    {
+        for (int i = 0; i < values.length; i++)
+        {
+            if (values[i] != null && predicate.test(nameOf(i)))
+            {
+                values[i] = null;
+            }
+        }
+        if (others != null)
+        {
+            others.keySet().removeIf(predicate);
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super String, ? super LazyValue> action)
+    {
+        for (int i = 0; i < values.length; i++)
+        {
+            if (values[i] != null)
+            {
+                action.accept(nameOf(i), values[i]);
+            }
+        }
+        if (others != null)
+        {
+            others.forEach(action);
+        }
+    }
+
+    public List<String> names()
+    {
+        List<String> result = new ArrayList<>();
+        forEach((name, value) -> result.add(name));
+        return result;
+    }
+
+    @Override
+    public int size()
+    {
+        int size = others == null ? 0 : others.size();
+        for (LazyValue value : values)
+        {
+            if (value != null)
+            {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, LazyValue>> entrySet()
+    {
+        return new AbstractSet<>()
+        {
+            @Override
+            public int size()
+            {
+                return VariableFrame.this.size();
+            }
+
+            @Override
+            public Iterator<Entry<String, LazyValue>> iterator()
+            {
+                return new Iterator<>()
+                {
+                    private int next = advance(0);
+                    private int last = -1;
+                    @Nullable
+                    private Iterator<Entry<String, LazyValue>> rest;
+                    private boolean inRest;
+
+                    private int advance(int from)
+                    {
+                        while (from < values.length && values[from] == null)
+                        {
+                            from++;
+                        }
+                        return from;
+                    }
+
+                    @Override
+                    public boolean hasNext()
+                    {
+                        if (next < values.length)
+                        {
+                            return true;
+                        }
+                        if (rest == null)
+                        {
+                            rest = others == null ? Map.<String, LazyValue>of().entrySet().iterator() : others.entrySet().iterator();
+                        }
+                        return rest.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, LazyValue> next()
+                    {
+                        if (!hasNext())
+                        {
+                            throw new NoSuchElementException();
+                        }
+                        if (next < values.length)
+                        {
+                            last = next;
+                            next = advance(next + 1);
+                            int slot = last;
+                            return new SimpleEntry<>(nameOf(slot), values[slot])
+                            {
+                                @Override
+                                public LazyValue setValue(LazyValue value)
+                                {
+                                    values[slot] = value;
+                                    return super.setValue(value);
+                                }
+                            };
+                        }
+                        inRest = true;
+                        return rest.next();
+                    }
+
+                    @Override
+                    public void remove()
+                    {
+                        if (inRest)
+                        {
+                            rest.remove();
+                            return;
+                        }
+                        if (last < 0)
+                        {
+                            throw new IllegalStateException();
+                        }
+                        values[last] = null;
+                        last = -1;
+                    }
+                };
+            }
+        };
+    }
+}
@@ -19,6 +19,7 @@ import carpet.script.utils.SnoopyCommandSource;
 import carpet.script.utils.SystemInfo;
 import carpet.script.utils.InputValidator;
 import carpet.script.utils.ScarpetJsonDeserializer;
+import carpet.script.utils.ScarpetJsonStream;
 import carpet.script.utils.ShapeDispatcher;
 import carpet.script.utils.WorldTools;
 import carpet.script.value.BooleanValue;
@@ -79,7 +80,6 @@ import org.apache.commons.io.file.PathUtils;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonElement;
 
 import javax.annotation.Nullable;
 import java.io.BufferedWriter;
@@ -956,10 +956,8 @@ public class Auxiliary
             }
             else if (fdesc.type == FileArgument.Type.JSON)
             {
-                JsonElement json;
-                json = ((CarpetScriptHost) c.host).readJsonFile(fdesc);
-                Value parsedJson = GSON.fromJson(json, Value.class);
-                return parsedJson == null ? Value.NULL : parsedJson;
+                Value json = ((CarpetScriptHost) c.host).readJsonFile(fdesc);
+                return json == null ? Value.NULL : json;
             }
             else
             {
@@ -990,9 +988,7 @@ public class Auxiliary
             }
             else if (fdesc.type == FileArgument.Type.JSON)
             {
-                List<String> data = Collections.singletonList(GSON.toJson(lv.get(2).toJson()));
-                ((CarpetScriptHost) c.host).removeResourceFile(fdesc);
-                success = ((CarpetScriptHost) c.host).appendLogFile(fdesc, data);
+                success = ((CarpetScriptHost) c.host).writeJsonFile(fdesc, lv.get(2));
             }
             else
             {
@@ -1248,41 +1244,10 @@ public class Auxiliary
 
     private static void zipValueToJson(Path path, Value output) throws IOException
     {
-        JsonElement element = output.toJson();
-        if (element == null)
-        {
-            throw new InternalExpressionException("Cannot interpret " + output.getPrettyString() + " as a json object");
-        }
-        String string = GSON.toJson(element);
         Files.createDirectories(path.getParent());
-        BufferedWriter bufferedWriter = Files.newBufferedWriter(path);
-        Throwable incident = null;
-        try
-        {
-            bufferedWriter.write(string);
-        }
-        catch (Throwable shitHappened)
-        {
-            incident = shitHappened;
-            throw shitHappened;
-        }
-        finally
+        try (BufferedWriter bufferedWriter = Files.newBufferedWriter(path))
         {
-            if (incident != null)
-            {
-                try
-                {
-                    bufferedWriter.close();
-                }
-                catch (Throwable otherShitHappened)
-                {
-                    incident.addSuppressed(otherShitHappened);
-                }
-            }
-            else
-            {
-                bufferedWriter.close();
-            }
+            ScarpetJsonStream.writePretty(bufferedWriter, output);
         }
     }
 
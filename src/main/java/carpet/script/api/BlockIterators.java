@@ -5,6 +5,7 @@ import carpet.script.Context;
 import carpet.script.Expression;
 import carpet.script.Fluff;
 import carpet.script.LazyValue;
+import carpet.script.VariableFrame;
 import carpet.script.argument.BlockArgument;
 import carpet.script.argument.Vector3Argument;
 import carpet.script.exception.BreakStatement;
@@ -13,17 +14,29 @@ import carpet.script.exception.InternalExpressionException;
 import carpet.script.value.BlockValue;
 import carpet.script.value.LazyListValue;
 import carpet.script.value.ListValue;
+import carpet.script.value.MapValue;
 import carpet.script.value.NumericValue;
 import carpet.script.value.Value;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 import net.minecraft.core.BlockPos;
+import net.minecraft.core.SectionPos;
 import net.minecraft.core.Vec3i;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.util.Mth;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+
+import javax.annotation.Nullable;
 
 import static java.lang.Math.abs;
 import static java.lang.Math.max;
@@ -42,6 +55,7 @@ public class BlockIterators
             }
             List<Value> lv = Fluff.AbstractFunction.unpackLazy(llv.subList(0, llv.size() - 1), c, Context.NONE);
             CarpetContext cc = (CarpetContext) c;
+            IterationOptions options = IterationOptions.takeFrom(cc, lv);
             BlockArgument centerLocator = BlockArgument.findIn(cc, lv, 0);
             Vector3Argument rangeLocator = Vector3Argument.findIn(lv, centerLocator.offset);
             BlockPos center = centerLocator.block.getPos();
@@ -83,70 +97,18 @@ public class BlockIterators
                             Mth.floor(abs(rangeLocator.vec.z)));
                 }
             }
-            if (llv.size() != rangeLocator.offset + 1)
+            if (lv.size() != rangeLocator.offset)
             {
                 throw new InternalExpressionException("'scan' takes two, or three block positions, and an expression: " + lv.size() + " " + rangeLocator.offset);
             }
-            LazyValue expr = llv.get(rangeLocator.offset);
+            LazyValue expr = llv.get(llv.size() - 1);
 
             int cx = center.getX();
             int cy = center.getY();
             int cz = center.getZ();
-            int xrange = range.getX();
-            int yrange = range.getY();
-            int zrange = range.getZ();
-            int xprange = upperRange.getX();
-            int yprange = upperRange.getY();
-            int zprange = upperRange.getZ();
-
-            //saving outer scope
-            LazyValue xVal = c.getVariable("_x");
-            LazyValue yVal = c.getVariable("_y");
-            LazyValue zVal = c.getVariable("_z");
-            LazyValue defaultVal = c.getVariable("_");
-            int sCount = 0;
-            outer:
-            for (int y = cy - yrange; y <= cy + yprange; y++)
-            {
-                int yFinal = y;
-                c.setVariable("_y", (ct, tt) -> new NumericValue(yFinal).bindTo("_y"));
-                for (int x = cx - xrange; x <= cx + xprange; x++)
-                {
-                    int xFinal = x;
-                    c.setVariable("_x", (ct, tt) -> new NumericValue(xFinal).bindTo("_x"));
-                    for (int z = cz - zrange; z <= cz + zprange; z++)
-                    {
-                        int zFinal = z;
-
-                        c.setVariable("_z", (ct, tt) -> new NumericValue(zFinal).bindTo("_z"));
-                        Value blockValue = BlockValue.fromCoords(((CarpetContext) c), xFinal, yFinal, zFinal).bindTo("_");
-                        c.setVariable("_", (ct, tt) -> blockValue);
-                        Value result;
-                        try
-                        {
-                            result = expr.evalValue(c, t);
-                        }
-                        catch (ContinueStatement notIgnored)
-                        {
-                            result = notIgnored.retval;
-                        }
-                        catch (BreakStatement notIgnored)
-                        {
-                            break outer;
-                        }
-                        if (t != Context.VOID && result.getBoolean())
-                        {
-                            sCount += 1;
-                        }
-                    }
-                }
-            }
-            //restoring outer scope
-            c.setVariable("_x", xVal);
-            c.setVariable("_y", yVal);
-            c.setVariable("_z", zVal);
-            c.setVariable("_", defaultVal);
-            int finalSCount = sCount;
+            int finalSCount = iterate(cc, t, expr, options,
+                    cx - range.getX(), cy - range.getY(), cz - range.getZ(),
+                    cx + upperRange.getX(), cy + upperRange.getY(), cz + upperRange.getZ());
             return (ct, tt) -> new NumericValue(finalSCount);
         });
 
@@ -159,73 +121,17 @@ public class BlockIterators
                 throw new InternalExpressionException("'volume' needs many more arguments");
             }
             List<Value> lv = Fluff.AbstractFunction.unpackLazy(llv.subList(0, llv.size() - 1), c, Context.NONE);
+            IterationOptions options = IterationOptions.takeFrom(cc, lv);
 
             BlockArgument pos1Locator = BlockArgument.findIn(cc, lv, 0);
             BlockArgument pos2Locator = BlockArgument.findIn(cc, lv, pos1Locator.offset);
             BlockPos pos1 = pos1Locator.block.getPos();
             BlockPos pos2 = pos2Locator.block.getPos();
 
-            int x1 = pos1.getX();
-            int y1 = pos1.getY();
-            int z1 = pos1.getZ();
-            int x2 = pos2.getX();
-            int y2 = pos2.getY();
-            int z2 = pos2.getZ();
-            int minx = min(x1, x2);
-            int miny = min(y1, y2);
-            int minz = min(z1, z2);
-            int maxx = max(x1, x2);
-            int maxy = max(y1, y2);
-            int maxz = max(z1, z2);
-            LazyValue expr = llv.get(pos2Locator.offset);
-
-            //saving outer scope
-            LazyValue xVal = c.getVariable("_x");
-            LazyValue yVal = c.getVariable("_y");
-            LazyValue zVal = c.getVariable("_z");
-            LazyValue defaultVal = c.getVariable("_");
-            int sCount = 0;
-            outer:
-            for (int y = miny; y <= maxy; y++)
-            {
-                int yFinal = y;
-                c.setVariable("_y", (ct, tt) -> new NumericValue(yFinal).bindTo("_y"));
-                for (int x = minx; x <= maxx; x++)
-                {
-                    int xFinal = x;
-                    c.setVariable("_x", (ct, tt) -> new NumericValue(xFinal).bindTo("_x"));
-                    for (int z = minz; z <= maxz; z++)
-                    {
-                        int zFinal = z;
-                        c.setVariable("_z", (ct, tt) -> new NumericValue(zFinal).bindTo("_z"));
-                        Value blockValue = BlockValue.fromCoords(((CarpetContext) c), xFinal, yFinal, zFinal).bindTo("_");
-                        c.setVariable("_", (ct, tt) -> blockValue);
-                        Value result;
-                        try
-                        {
-                            result = expr.evalValue(c, t);
-                        }
-                        catch (ContinueStatement notIgnored)
-                        {
-                            result = notIgnored.retval;
-                        }
-                        catch (BreakStatement notIgnored)
-                        {
-                            break outer;
-                        }
-                        if (t != Context.VOID && result.getBoolean())
-                        {
-                            sCount += 1;
-                        }
-                    }
-                }
-            }
-            //restoring outer scope
-            c.setVariable("_x", xVal);
-            c.setVariable("_y", yVal);
-            c.setVariable("_z", zVal);
-            c.setVariable("_", defaultVal);
-            int finalSCount = sCount;
+            LazyValue expr = llv.get(llv.size() - 1);
+            int finalSCount = iterate(cc, t, expr, options,
+                    min(pos1.getX(), pos2.getX()), min(pos1.getY(), pos2.getY()), min(pos1.getZ(), pos2.getZ()),
+                    max(pos1.getX(), pos2.getX()), max(pos1.getY(), pos2.getY()), max(pos1.getZ(), pos2.getZ()));
             return (ct, tt) -> new NumericValue(finalSCount);
         });
 
@@ -542,4 +448,297 @@ public class BlockIterators
             }
         });
     }
+
+    /**
+     * Options of scan and volume, given as a map after positions: order of visiting blocks, and blocks to visit
+     */
+    private record IterationOptions(boolean sections, @Nullable Set<Block> filter)
+    {
+        static final IterationOptions DEFAULT = new IterationOptions(false, null);
+
+        /**
+         * Removes the options from the end of arguments, if they are there
+         */
+        static IterationOptions takeFrom(CarpetContext cc, List<Value> lv)
+        {
+            if (lv.isEmpty() || !(lv.get(lv.size() - 1) instanceof final MapValue map))
+            {
+                return DEFAULT;
+            }
+            lv.remove(lv.size() - 1);
+            boolean sections = false;
+            Set<Block> filter = null;
+            for (Map.Entry<Value, Value> option : map.getMap().entrySet())
+            {
+                String name = option.getKey().getString();
+                switch (name)
+                {
+                    case "order" ->
+                    {
+                        String order = option.getValue().getString();
+                        if (!order.equals("sections") && !order.equals("coordinates"))
+                        {
+                            throw new InternalExpressionException("Unknown order of iteration: " + order + ", needs to be 'sections' or 'coordinates'");
+                        }
+                        sections = order.equals("sections");
+                    }
+                    case "filter" ->
+                    {
+                        filter = new HashSet<>();
+                        List<Value> blocks = option.getValue() instanceof final ListValue list ? list.getItems() : List.of(option.getValue());
+                        for (Value block : blocks)
+                        {
+                            BlockValue blockValue = block instanceof final BlockValue bv ? bv : BlockValue.fromString(block.getString(), cc.level());
+                            filter.add(blockValue.getBlockState().getBlock());
+                        }
+                    }
+                    default -> throw new InternalExpressionException("Unknown option of block iteration: " + name);
+                }
+            }
+            return new IterationOptions(sections, filter);
+        }
+
+        boolean accepts(BlockState state)
+        {
+            return filter == null || filter.contains(state.getBlock());
+        }
+
+        boolean skips(@Nullable LevelChunkSection section)
+        {
+            if (filter == null)
+            {
+                return false;
+            }
+            return section == null ? !filter.contains(Blocks.VOID_AIR) : !section.maybeHas(this::accepts);
+        }
+    }
+
+    /**
+     * Evaluates the expression for blocks in the box, in order of y, x and z coordinates, or section by section,
+     * in chunks sorted by x and z and sections from the bottom up, with the same order within each section.
+     * Blocks are read from the chunk section directly if they need to be checked against a filter, and sections
+     * that can't have any of the filtered blocks are skipped altogether.
+     *
+     * @return number of blocks for which the expression was true
+     */
+    private static int iterate(CarpetContext cc, Context.Type t, LazyValue expr, IterationOptions options,
+                               int minx, int miny, int minz, int maxx, int maxy, int maxz)
+    {
+        BlockIteration iteration = new BlockIteration(cc, t, expr);
+        try
+        {
+            if (!options.sections() && options.filter() == null)
+            {
+                outer:
+                for (int y = miny; y <= maxy; y++)
+                {
+                    for (int x = minx; x <= maxx; x++)
+                    {
+                        for (int z = minz; z <= maxz; z++)
+                        {
+                            if (!iteration.visit(x, y, z, BlockValue.fromCoords(cc, x, y, z)))
+                            {
+                                break outer;
+                            }
+                        }
+                    }
+                }
+                return iteration.count;
+            }
+            ServerLevel world = cc.level();
+            BlockPos origin = cc.origin();
+            if (!options.sections())
+            {
+                SectionCache sections = new SectionCache(world, options);
+                outer:
+                for (int y = miny; y <= maxy; y++)
+                {
+                    for (int x = minx; x <= maxx; x++)
+                    {
+                        for (int z = minz; z <= maxz; z++)
+                        {
+                            BlockPos pos = BlockValue.locateBlockPos(cc, x, y, z);
+                            LevelChunkSection section = sections.get(pos);
+                            if (sections.skipped)
+                            {
+                                continue;
+                            }
+                            BlockState state = stateIn(section, pos);
+                            if (options.accepts(state) && !iteration.visit(x, y, z, new BlockValue(state, world, pos)))
+                            {
+                                break outer;
+                            }
+                        }
+                    }
+                }
+                return iteration.count;
+            }
+            int fromX = minx + origin.getX();
+            int fromY = miny + origin.getY();
+            int fromZ = minz + origin.getZ();
+            int toX = maxx + origin.getX();
+            int toY = maxy + origin.getY();
+            int toZ = maxz + origin.getZ();
+            for (int chunkX = SectionPos.blockToSectionCoord(fromX); chunkX <= SectionPos.blockToSectionCoord(toX); chunkX++)
+            {
+                for (int chunkZ = SectionPos.blockToSectionCoord(fromZ); chunkZ <= SectionPos.blockToSectionCoord(toZ); chunkZ++)
+                {
+                    LevelChunk chunk = world.getChunk(chunkX, chunkZ);
+                    for (int sectionY = SectionPos.blockToSectionCoord(fromY); sectionY <= SectionPos.blockToSectionCoord(toY); sectionY++)
+                    {
+                        int sectionIndex = chunk.getSectionIndexFromSectionY(sectionY);
+                        LevelChunkSection section = sectionIndex < 0 || sectionIndex >= chunk.getSectionsCount() ? null : chunk.getSection(sectionIndex);
+                        if (options.skips(section))
+                        {
+                            continue;
+                        }
+                        int sectionToY = min(toY, SectionPos.sectionToBlockCoord(sectionY, 15));
+                        int sectionToX = min(toX, SectionPos.sectionToBlockCoord(chunkX, 15));
+                        int sectionToZ = min(toZ, SectionPos.sectionToBlockCoord(chunkZ, 15));
+                        for (int y = max(fromY, SectionPos.sectionToBlockCoord(sectionY)); y <= sectionToY; y++)
+                        {
+                            for (int x = max(fromX, SectionPos.sectionToBlockCoord(chunkX)); x <= sectionToX; x++)
+                            {
+                                for (int z = max(fromZ, SectionPos.sectionToBlockCoord(chunkZ)); z <= sectionToZ; z++)
+                                {
+                                    BlockPos pos = new BlockPos(x, y, z);
+                                    BlockState state = stateIn(section, pos);
+                                    if (options.accepts(state) && !iteration.visit(x - origin.getX(), y - origin.getY(), z - origin.getZ(), new BlockValue(state, world, pos)))
+                                    {
+                                        return iteration.count;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+            return iteration.count;
+        }
+        finally
+        {
+            iteration.restore();
+        }
+    }
+
+    private static BlockState stateIn(@Nullable LevelChunkSection section, BlockPos pos)
+    {
+        return section == null ? Blocks.VOID_AIR.defaultBlockState() : section.getBlockState(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15);
+    }
+
+    /**
+     * Section of the last looked up position, so walking along a row doesn't look up its chunk for every block
+     */
+    private static final class SectionCache
+    {
+        private final ServerLevel world;
+        private final IterationOptions options;
+        private long lastSection = Long.MAX_VALUE;
+        @Nullable
+        private LevelChunkSection last;
+        // whether the last section has none of the filtered blocks
+        boolean skipped;
+
+        SectionCache(ServerLevel world, IterationOptions options)
+        {
+            this.world = world;
+            this.options = options;
+        }
+
+        @Nullable
+        LevelChunkSection get(BlockPos pos)
+        {
+            long section = SectionPos.asLong(pos);
+            if (section != lastSection)
+            {
+                lastSection = section;
+                last = world.isOutsideBuildHeight(pos) ? null : world.getChunkAt(pos).getSection(world.getSectionIndex(pos.getY()));
+                skipped = options.skips(last);
+            }
+            return last;
+        }
+    }
+
+    /**
+     * Evaluation of the expression of scan or volume for each block, with _x, _y, _z and _ bound to the block.
+     * Public so benchmarks can measure binding of the loop variables without a world.
+     */
+    public static final class BlockIteration
+    {
+        private final Context c;
+        private final Context.Type t;
+        private final LazyValue expr;
+        //saving outer scope
+        private final LazyValue xVal;
+        private final LazyValue yVal;
+        private final LazyValue zVal;
+        private final LazyValue defaultVal;
+        private final LazyValue.NumericBinding xBinding = new LazyValue.NumericBinding("_x");
+        private final LazyValue.NumericBinding yBinding = new LazyValue.NumericBinding("_y");
+        private final LazyValue.NumericBinding zBinding = new LazyValue.NumericBinding("_z");
+        private final LazyValue.Binding blockBinding = new LazyValue.Binding(null, Value.NULL);
+        int count = 0;
+
+        public BlockIteration(Context c, Context.Type t, LazyValue expr)
+        {
+            this.c = c;
+            this.t = t;
+            this.expr = expr;
+            xVal = c.getVariable(VariableFrame.X);
+            yVal = c.getVariable(VariableFrame.Y);
+            zVal = c.getVariable(VariableFrame.Z);
+            defaultVal = c.getVariable(VariableFrame.ELEMENT);
+        }
+
+        /**
+         * @return false if the expression broke out of the loop
+         */
+        public boolean visit(int x, int y, int z, BlockValue block)
+        {
+            xBinding.set(x);
+            yBinding.set(y);
+            zBinding.set(z);
+            blockBinding.set(block.bindTo("_"));
+            // body may have reassigned them, so bindings need to be put back every time
+            c.setVariable(VariableFrame.X, xBinding);
+            c.setVariable(VariableFrame.Y, yBinding);
+            c.setVariable(VariableFrame.Z, zBinding);
+            c.setVariable(VariableFrame.ELEMENT, blockBinding);
+            Value result;
+            try
+            {
+                result = expr.evalValue(c, t);
+            }
+            catch (ContinueStatement notIgnored)
+            {
+                result = notIgnored.retval;
+            }
+            catch (BreakStatement notIgnored)
+            {
+                return false;
+            }
+            if (t != Context.VOID && result.getBoolean())
+            {
+                count += 1;
+            }
+            return true;
+        }
+
+        /**
+         * @return number of blocks for which the expression was true
+         */
+        public int count()
+        {
+            return count;
+        }
+
+        //restoring outer scope
+        public void restore()
+        {
+            c.setVariable(VariableFrame.X, xVal);
+            c.setVariable(VariableFrame.Y, yVal);
+            c.setVariable(VariableFrame.Z, zVal);
+            c.setVariable(VariableFrame.ELEMENT, defaultVal);
+        }
+    }
 }
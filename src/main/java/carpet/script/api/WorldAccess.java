@@ -27,10 +27,12 @@ import carpet.script.value.NumericValue;
 import carpet.script.value.StringValue;
 import carpet.script.value.Value;
 import carpet.script.value.ValueConversions;
+import carpet.script.value.WorldSnapshotValue;
 
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
 import net.minecraft.Util;
 import net.minecraft.core.BlockPos;
 import net.minecraft.core.Direction;
@@ -39,6 +41,7 @@ import net.minecraft.core.HolderSet;
 import net.minecraft.core.QuartPos;
 import net.minecraft.core.Registry;
 import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.SectionPos;
 import net.minecraft.core.particles.ParticleOptions;
 import net.minecraft.core.particles.ParticleTypes;
 import net.minecraft.core.registries.BuiltInRegistries;
@@ -90,6 +93,7 @@ import net.minecraft.network.protocol.game.ClientboundExplodePacket;
 import net.minecraft.resources.ResourceLocation;
 import net.minecraft.sounds.SoundSource;
 import net.minecraft.util.Mth;
+import net.minecraft.util.SimpleBitStorage;
 import net.minecraft.util.SortedArraySet;
 import net.minecraft.world.Clearable;
 import net.minecraft.world.InteractionResult;
@@ -126,6 +130,7 @@ import net.minecraft.world.level.block.state.StateDefinition;
 import net.minecraft.world.level.block.state.properties.Property;
 import net.minecraft.world.level.chunk.ChunkAccess;
 import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
 import net.minecraft.world.level.levelgen.Heightmap;
 import net.minecraft.world.level.levelgen.WorldgenRandom;
 import net.minecraft.world.level.levelgen.structure.BoundingBox;
@@ -253,6 +258,135 @@ public class WorldAccess
         return (float) num;
     }
 
+    /**
+     * Block to set by set_many, applied on the main thread the same way set does it
+     */
+    private record BlockChange(BlockPos pos, BlockState state, @Nullable CompoundTag data)
+    {
+        boolean apply(ServerLevel world)
+        {
+            if (data == null && world.getBlockState(pos) == state)
+            {
+                return false;
+            }
+            boolean success = world.setBlock(pos, state, Block.UPDATE_CLIENTS | Block.UPDATE_SKIP_BLOCK_ENTITY_SIDEEFFECTS);
+            if (data != null)
+            {
+                BlockEntity be = world.getBlockEntity(pos);
+                if (be != null)
+                {
+                    CompoundTag destTag = data.copy();
+                    destTag.putInt("x", pos.getX());
+                    destTag.putInt("y", pos.getY());
+                    destTag.putInt("z", pos.getZ());
+                    be.loadWithComponents(destTag, world.registryAccess());
+                    be.setChanged();
+                    success = true;
+                }
+            }
+            return success;
+        }
+    }
+
+    /**
+     * Reads states of all blocks in the box straight from sections of their chunks, into a palette of states
+     * and a bit storage of their indices, which grows to more bits per block as the palette grows
+     */
+    private static Value readRegion(ServerLevel world, BlockPos from, BlockPos to)
+    {
+        BlockPos min = BlockPos.min(from, to);
+        BlockPos max = BlockPos.max(from, to);
+        int sizeX = max.getX() - min.getX() + 1;
+        int sizeY = max.getY() - min.getY() + 1;
+        int sizeZ = max.getZ() - min.getZ() + 1;
+        long volume = (long) sizeX * sizeY * sizeZ;
+        if (volume > Integer.MAX_VALUE)
+        {
+            throw new InternalExpressionException("Region to read is too large: " + volume + " blocks");
+        }
+        List<BlockState> palette = new ArrayList<>();
+        Reference2IntOpenHashMap<BlockState> ids = new Reference2IntOpenHashMap<>();
+        ids.defaultReturnValue(-1);
+        SimpleBitStorage storage = new SimpleBitStorage(1, (int) volume);
+        BlockState last = null;
+        int lastId = -1;
+        for (int chunkX = SectionPos.blockToSectionCoord(min.getX()); chunkX <= SectionPos.blockToSectionCoord(max.getX()); chunkX++)
+        {
+            for (int chunkZ = SectionPos.blockToSectionCoord(min.getZ()); chunkZ <= SectionPos.blockToSectionCoord(max.getZ()); chunkZ++)
+            {
+                LevelChunk chunk = world.getChunk(chunkX, chunkZ);
+                int fromX = Math.max(min.getX(), SectionPos.sectionToBlockCoord(chunkX));
+                int toX = Math.min(max.getX(), SectionPos.sectionToBlockCoord(chunkX, 15));
+                int fromZ = Math.max(min.getZ(), SectionPos.sectionToBlockCoord(chunkZ));
+                int toZ = Math.min(max.getZ(), SectionPos.sectionToBlockCoord(chunkZ, 15));
+                for (int y = min.getY(); y <= max.getY(); y++)
+                {
+                    LevelChunkSection section = world.isOutsideBuildHeight(y) ? null : chunk.getSection(chunk.getSectionIndex(y));
+                    for (int z = fromZ; z <= toZ; z++)
+                    {
+                        int row = ((y - min.getY()) * sizeZ + (z - min.getZ())) * sizeX - min.getX();
+                        for (int x = fromX; x <= toX; x++)
+                        {
+                            BlockState state = section == null ? Blocks.VOID_AIR.defaultBlockState() : section.getBlockState(x & 15, y & 15, z & 15);
+                            if (state != last)
+                            {
+                                last = state;
+                                lastId = ids.getInt(state);
+                                if (lastId == -1)
+                                {
+                                    lastId = palette.size();
+                                    ids.put(state, lastId);
+                                    palette.add(state);
+                                    if (lastId >> storage.getBits() != 0)
+                                    {
+                                        SimpleBitStorage wider = new SimpleBitStorage(storage.getBits() + 1, storage.getSize());
+                                        int[] index = new int[]{0};
+                                        storage.getAll(id -> wider.set(index[0]++, id));
+                                        storage = wider;
+                                    }
+                                }
+                            }
+                            storage.set(row + x, lastId);
+                        }
+                    }
+                }
+            }
+        }
+        long[] counts = new long[palette.size()];
+        storage.getAll(id -> counts[id]++);
+        Map<Value, Value> region = new HashMap<>();
+        region.put(StringValue.of("origin"), ValueConversions.of(min));
+        region.put(StringValue.of("size"), ListValue.of(new NumericValue(sizeX), new NumericValue(sizeY), new NumericValue(sizeZ)));
+        region.put(StringValue.of("palette"), ListValue.wrap(palette.stream().map(BlockValue::new)));
+        region.put(StringValue.of("counts"), ListValue.ofLongs(counts));
+        region.put(StringValue.of("bits"), new NumericValue(storage.getBits()));
+        region.put(StringValue.of("data"), ListValue.ofLongs(storage.getRaw()));
+        return MapValue.wrap(region);
+    }
+
+    private static Heightmap.Types heightmapType(Value value)
+    {
+        String type = value.getString().toLowerCase(Locale.ROOT);
+        return switch (type)
+        {
+            //case "light": htype = Heightmap.Type.LIGHT_BLOCKING; break;  //investigate
+            case "motion" -> Heightmap.Types.MOTION_BLOCKING;
+            case "terrain" -> Heightmap.Types.MOTION_BLOCKING_NO_LEAVES;
+            case "ocean_floor" -> Heightmap.Types.OCEAN_FLOOR;
+            case "surface" -> Heightmap.Types.WORLD_SURFACE;
+            default -> throw new InternalExpressionException("Unknown heightmap type: " + type);
+        };
+    }
+
+    private static WorldSnapshotValue snapshotOf(Value value)
+    {
+        if (value instanceof final WorldSnapshotValue snapshot)
+        {
+            return snapshot;
+        }
+        throw new InternalExpressionException("Expected a world snapshot, got " + value.getString());
+    }
+
     private static void theBooYah(ServerLevel level)
     {
         synchronized (level)
@@ -582,16 +716,7 @@ public class WorldAccess
 
         expression.addContextFunction("top", -1, (c, t, lv) ->
         {
-            String type = lv.get(0).getString().toLowerCase(Locale.ROOT);
-            Heightmap.Types htype = switch (type)
-            {
-                //case "light": htype = Heightmap.Type.LIGHT_BLOCKING; break;  //investigate
-                case "motion" -> Heightmap.Types.MOTION_BLOCKING;
-                case "terrain" -> Heightmap.Types.MOTION_BLOCKING_NO_LEAVES;
-                case "ocean_floor" -> Heightmap.Types.OCEAN_FLOOR;
-                case "surface" -> Heightmap.Types.WORLD_SURFACE;
-                default -> throw new InternalExpressionException("Unknown heightmap type: " + type);
-            };
+            Heightmap.Types htype = heightmapType(lv.get(0));
             BlockArgument locator = BlockArgument.findIn((CarpetContext) c, lv, 1);
             BlockPos pos = locator.block.getPos();
             int x = pos.getX();
@@ -599,6 +724,51 @@ public class WorldAccess
             return new NumericValue(((CarpetContext) c).level().getChunk(x >> 4, z >> 4).getHeight(htype, x & 15, z & 15) + 1);
         });
 
+        expression.addContextFunction("world_snapshot", -1, (c, t, lv) ->
+        {
+            CarpetContext cc = (CarpetContext) c;
+            BlockArgument from = BlockArgument.findIn(cc, lv, 0);
+            BlockArgument to = BlockArgument.findIn(cc, lv, from.offset);
+            ServerLevel world = cc.level();
+            WorldSnapshotValue[] snapshot = new WorldSnapshotValue[1];
+            // taken between ticks, so the copy doesn't catch any change halfway through
+            cc.server().executeBlocking(() -> snapshot[0] = WorldSnapshotValue.capture(world, from.block.getPos(), to.block.getPos()));
+            return snapshot[0];
+        });
+
+        expression.addContextFunction("snapshot_block", -1, (c, t, lv) ->
+        {
+            if (lv.isEmpty())
+            {
+                throw new InternalExpressionException("'snapshot_block' requires a snapshot and a position");
+            }
+            BlockPos pos = BlockArgument.findIn((CarpetContext) c, lv, 1).block.getPos();
+            return new BlockValue(snapshotOf(lv.get(0)).getBlockState(pos));
+        });
+
+        expression.addContextFunction("snapshot_biome", -1, (c, t, lv) ->
+        {
+            if (lv.isEmpty())
+            {
+                throw new InternalExpressionException("'snapshot_biome' requires a snapshot and a position");
+            }
+            BlockPos pos = BlockArgument.findIn((CarpetContext) c, lv, 1).block.getPos();
+            return NBTSerializableValue.nameFromRegistryId(snapshotOf(lv.get(0)).getBiome(pos).unwrapKey().map(ResourceKey::location).orElse(null));
+        });
+
+        expression.addContextFunction("snapshot_top", -1, (c, t, lv) ->
+        {
+            if (lv.size() < 2)
+            {
+                throw new InternalExpressionException("'snapshot_top' requires a snapshot, heightmap type and a position");
+            }
+            Heightmap.Types htype = heightmapType(lv.get(1));
+            BlockPos pos = BlockArgument.findIn((CarpetContext) c, lv, 2).block.getPos();
+            return new NumericValue(snapshotOf(lv.get(0)).getHeight(htype, pos.getX(), pos.getZ()) + 1);
+        });
+
+        expression.addUnaryFunction("snapshot_info", v -> snapshotOf(v).info());
+
         expression.addContextFunction("loaded", -1, (c, t, lv) ->
                 BooleanValue.of((((CarpetContext) c).level().hasChunkAt(BlockArgument.findIn((CarpetContext) c, lv, 0).block.getPos()))));
 
@@ -626,7 +796,7 @@ public class WorldAccess
             {
                 force = lv.get(locator.offset).getBoolean();
             }
-            return BooleanValue.of(canHasChunk(((CarpetContext) c).level(), new ChunkPos(pos), null, force));
+            return BooleanValue.of(canHasChunk(((CarpetContext) c).level(), new ChunkPos(pos), force));
         });
 
         expression.addContextFunction("generation_status", -1, (c, t, lv) ->
@@ -839,6 +1009,79 @@ public class WorldAccess
             return !result[0] ? Value.FALSE : new BlockValue(finalSourceBlockState, world, targetLocator.block.getPos());
         });
 
+        expression.addContextFunction("set_many", -1, (c, t, lv) ->
+        {
+            if (lv.isEmpty() || lv.size() > 2)
+            {
+                throw new InternalExpressionException("'set_many' requires a list or a map of blocks to set, and optionally whether to cause updates");
+            }
+            CarpetContext cc = (CarpetContext) c;
+            ServerLevel world = cc.level();
+            List<List<Value>> entries = new ArrayList<>();
+            if (lv.get(0) instanceof final MapValue map)
+            {
+                map.getMap().forEach((pos, block) -> entries.add(List.of(pos, block)));
+            }
+            else if (lv.get(0) instanceof final ListValue list)
+            {
+                for (Value entry : list.getItems())
+                {
+                    if (!(entry instanceof final ListValue args))
+                    {
+                        throw new InternalExpressionException("Blocks to set need to be lists of a position and a block, not " + entry.getString());
+                    }
+                    entries.add(args.getItems());
+                }
+            }
+            else
+            {
+                throw new InternalExpressionException("'set_many' requires a list or a map of blocks to set");
+            }
+            boolean updates = lv.size() < 2 || lv.get(1).getBoolean();
+            List<BlockChange> changes = new ArrayList<>(entries.size());
+            for (List<Value> entry : entries)
+            {
+                BlockArgument targetLocator = BlockArgument.findIn(cc, entry, 0);
+                BlockArgument sourceLocator = BlockArgument.findIn(cc, entry, targetLocator.offset, true);
+                changes.add(new BlockChange(targetLocator.block.getPos(), sourceLocator.block.getBlockState(), sourceLocator.block.getData()));
+            }
+            // keeps the order of changes to the same position
+            changes.sort(Comparator.comparingLong(change -> SectionPos.asLong(change.pos())));
+            int[] changed = new int[]{0};
+            cc.server().executeBlocking(() ->
+            {
+                ThreadLocal<Boolean> skipUpdates = Carpet.getImpendingFillSkipUpdates();
+                boolean previous = skipUpdates.get();
+                try
+                {
+                    if (!updates)
+                    {
+                        skipUpdates.set(true);
+                    }
+                    for (BlockChange change : changes)
+                    {
+                        if (change.apply(world))
+                        {
+                            changed[0]++;
+                        }
+                    }
+                }
+                finally
+                {
+                    skipUpdates.set(previous);
+                }
+            });
+            return new NumericValue(changed[0]);
+        });
+
+        expression.addContextFunction("read_region", -1, (c, t, lv) ->
+        {
+            CarpetContext cc = (CarpetContext) c;
+            BlockArgument from = BlockArgument.findIn(cc, lv, 0);
+            BlockArgument to = BlockArgument.findIn(cc, lv, from.offset);
+            return readRegion(cc.level(), from.block.getPos(), to.block.getPos());
+        });
+
         expression.addContextFunction("destroy", -1, (c, t, lv) ->
         {
             CarpetContext cc = (CarpetContext) c;
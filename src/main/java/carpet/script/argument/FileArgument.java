@@ -7,12 +7,11 @@ import carpet.script.ScriptHost;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.ThrowStatement;
 import carpet.script.exception.Throwables;
+import carpet.script.utils.ScarpetJsonStream;
 import carpet.script.value.MapValue;
 import carpet.script.value.StringValue;
 import carpet.script.value.Value;
-import com.google.gson.JsonElement;
 import com.google.gson.JsonParseException;
-import com.google.gson.JsonParser;
 import net.minecraft.ReportedException;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.NbtAccounter;
@@ -33,11 +32,13 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystemNotFoundException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -369,6 +370,53 @@ public class FileArgument
         }
     }
 
+    public boolean writeJsonFile(Module module, Value value)
+    {
+        try
+        {
+            synchronized (writeIOSync)
+            {
+                Path dataFile = toPath(module);
+                if (dataFile == null)
+                {
+                    return false;
+                }
+                createPaths(dataFile);
+                // written next to the file first, so a write that fails halfway keeps the previous content
+                boolean zipped = zipContainer != null;
+                Path tempFile = zipped ? dataFile : dataFile.resolveSibling(dataFile.getFileName() + "_tmp");
+                try
+                {
+                    try (BufferedWriter writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8))
+                    {
+                        ScarpetJsonStream.writePretty(writer, value);
+                    }
+                    if (!zipped)
+                    {
+                        replace(tempFile, dataFile);
+                    }
+                }
+                finally
+                {
+                    if (!zipped)
+                    {
+                        Files.deleteIfExists(tempFile);
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            CarpetScriptServer.LOG.warn("IOException when writing JSON file", e);
+            throw new ThrowStatement("Error when writing to the file: " + e, Throwables.IO_EXCEPTION);
+        }
+        finally
+        {
+            close();
+        }
+        return true;
+    }
+
     public boolean appendToTextFile(Module module, List<String> message)
     {
         try
@@ -542,6 +590,18 @@ public class FileArgument
         }
     }
 
+    private static void replace(Path source, Path target) throws IOException
+    {
+        try
+        {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e)
+        {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
     public boolean dropExistingFile(Module module)
     {
         try
@@ -616,7 +676,7 @@ public class FileArgument
     }
 
     @Nullable
-    public JsonElement readJsonFile(Module module)
+    public Value readJsonFile(Module module)
     {
         try
         {
@@ -636,11 +696,11 @@ public class FileArgument
         }
     }
 
-    public static JsonElement readJsonContent(Path filePath)
+    public static Value readJsonContent(Path filePath)
     {
         try (BufferedReader reader = Files.newBufferedReader(filePath, StandardCharsets.UTF_8))
         {
-            return JsonParser.parseReader(reader);
+            return ScarpetJsonStream.readDocument(reader);
         }
         catch (JsonParseException e)
         {
@@ -1,5 +1,6 @@
 package carpet.script.argument;
 
+import carpet.script.CallSiteCache;
 import carpet.script.Context;
 import carpet.script.ScriptHost;
 import carpet.script.Module;
@@ -45,6 +46,22 @@ public class FunctionArgument extends Argument
             int offset,
             boolean allowNone,
             boolean checkArgs)
+    {
+        return findIn(c, module, params, offset, allowNone, checkArgs, null);
+    }
+
+    /**
+     * @param callSite cache of functions called by name from the place in the code that calls the function
+     * @see #findIn(Context, Module, List, int, boolean, boolean)
+     */
+    public static FunctionArgument findIn(
+            Context c,
+            Module module,
+            List<Value> params,
+            int offset,
+            boolean allowNone,
+            boolean checkArgs,
+            @Nullable CallSiteCache callSite)
     {
         Value functionValue = params.get(offset);
         if (functionValue.isNull())
@@ -58,7 +75,7 @@ public class FunctionArgument extends Argument
         if (!(functionValue instanceof FunctionValue))
         {
             String name = functionValue.getString();
-            functionValue = c.host.getAssertFunction(module, name);
+            functionValue = callSite == null ? c.host.getAssertFunction(module, name) : callSite.resolve(c, module, name);
         }
         FunctionValue fun = (FunctionValue) functionValue;
         int argsize = fun.getArguments().size();
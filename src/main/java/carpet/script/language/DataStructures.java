@@ -3,10 +3,10 @@ package carpet.script.language;
 import carpet.script.Context;
 import carpet.script.Expression;
 import carpet.script.LazyValue;
-import carpet.script.api.Auxiliary;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.ThrowStatement;
 import carpet.script.exception.Throwables;
+import carpet.script.utils.ScarpetJsonStream;
 import carpet.script.value.BooleanValue;
 import carpet.script.value.ContainerValueInterface;
 import carpet.script.value.LContainerValue;
@@ -17,16 +17,24 @@ import carpet.script.value.NumericValue;
 import carpet.script.value.StringValue;
 import carpet.script.value.Value;
 import com.google.gson.JsonParseException;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.longs.LongArrays;
 
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Base64;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import javax.annotation.Nullable;
+
 public class DataStructures
 {
+    private static final int PARALLEL_SORT_THRESHOLD = 1 << 13;
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+
     public static void apply(Expression expression)
     {
         expression.addFunction("l", lv ->
@@ -127,16 +135,17 @@ public class DataStructures
             LazyValue sortKey = lv.get(1);
             //scoping
             LazyValue defaultVal = c.getVariable("_");
-            toSort.sort((v1, v2) -> {
-                c.setVariable("_", (cc, tt) -> v1);
-                Value ev1 = sortKey.evalValue(c);
-                c.setVariable("_", (cc, tt) -> v2);
-                Value ev2 = sortKey.evalValue(c);
-                return ev1.compareTo(ev2);
-            });
+            // each key is evaluated once, in list order, and only the keys are compared while sorting
+            Value[] keys = new Value[toSort.size()];
+            for (int i = 0; i < keys.length; i++)
+            {
+                Value item = toSort.get(i);
+                c.setVariable("_", (cc, tt) -> item);
+                keys[i] = sortKey.evalValue(c);
+            }
             //revering scope
             c.setVariable("_", defaultVal);
-            Value ret = ListValue.wrap(toSort);
+            Value ret = ListValue.wrap(sortByKeys(toSort, keys));
             return (cc, tt) -> ret;
         });
 
@@ -376,11 +385,11 @@ public class DataStructures
             }
         });
 
-        expression.addUnaryFunction("encode_json", v -> StringValue.of(v.toJson().toString()));
+        expression.addUnaryFunction("encode_json", v -> StringValue.of(ScarpetJsonStream.encode(v)));
         expression.addUnaryFunction("decode_json", v -> {
             try
             {
-                return Auxiliary.GSON.fromJson(v.getString(), Value.class);
+                return ScarpetJsonStream.decode(v.getString());
             }
             catch (JsonParseException jpe)
             {
@@ -388,4 +397,70 @@ public class DataStructures
             }
         });
     }
+
+    /**
+     * Stable sort of items by their precomputed keys. Number keys are sorted as primitives with a radix sort,
+     * in parallel for large lists, since comparing them can't run any scarpet code.
+     */
+    private static List<Value> sortByKeys(List<Value> items, Value[] keys)
+    {
+        int size = keys.length;
+        int[] order = new int[size];
+        Arrays.setAll(order, i -> i);
+        long[] numericKeys = numericKeys(keys);
+        if (numericKeys == null)
+        {
+            IntArrays.mergeSort(order, (a, b) -> keys[a].compareTo(keys[b]));
+        }
+        else if (size >= PARALLEL_SORT_THRESHOLD)
+        {
+            LongArrays.parallelRadixSortIndirect(order, numericKeys, true);
+        }
+        else
+        {
+            LongArrays.radixSortIndirect(order, numericKeys, true);
+        }
+        List<Value> sorted = new ArrayList<>(size);
+        for (int index : order)
+        {
+            sorted.add(items.get(index));
+        }
+        return sorted;
+    }
+
+    /**
+     * @return keys as longs in the same order as comparing the keys themselves, or null if not all keys are plain numbers
+     */
+    @Nullable
+    private static long[] numericKeys(Value[] keys)
+    {
+        boolean allLong = true;
+        for (Value key : keys)
+        {
+            if (key.getClass() != NumericValue.class)
+            {
+                return null;
+            }
+            allLong &= ((NumericValue) key).hasLongValue();
+        }
+        long[] numericKeys = new long[keys.length];
+        if (allLong)
+        {
+            Arrays.setAll(numericKeys, i -> ((NumericValue) keys[i]).getLong());
+            return numericKeys;
+        }
+        for (int i = 0; i < keys.length; i++)
+        {
+            NumericValue key = (NumericValue) keys[i];
+            // two integers are compared exactly, so only these that are exact as doubles can be compared as doubles
+            if (key.hasLongValue() && (key.getLong() > MAX_EXACT_DOUBLE || key.getLong() < -MAX_EXACT_DOUBLE))
+            {
+                return null;
+            }
+            // bits of negative doubles are flipped, so they are ordered as longs the same way as Double.compare orders them
+            long bits = Double.doubleToLongBits(key.getDouble());
+            numericKeys[i] = bits ^ ((bits >> 63) & Long.MAX_VALUE);
+        }
+        return numericKeys;
+    }
 }
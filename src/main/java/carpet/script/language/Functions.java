@@ -8,10 +8,12 @@ import carpet.script.Token;
 import carpet.script.argument.FunctionArgument;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.ReturnStatement;
+import carpet.script.value.FunctionCache;
 import carpet.script.value.FunctionSignatureValue;
 import carpet.script.value.FunctionValue;
 import carpet.script.value.FunctionAnnotationValue;
 import carpet.script.value.ListValue;
+import carpet.script.value.NumericValue;
 import carpet.script.value.StringValue;
 import carpet.script.value.Value;
 
@@ -21,6 +23,8 @@ import java.util.Locale;
 
 public class Functions
 {
+    private static final int DEFAULT_CACHE_SIZE = 1000;
+
     public static void apply(Expression expression) // public just to get the javadoc right
     {
         // artificial construct to handle user defined functions and function definitions
@@ -55,7 +59,7 @@ public class Functions
                 if (t != Context.SIGNATURE) // just call the function
                 {
                     List<Value> args = Fluff.AbstractFunction.unpackLazy(lv, c, Context.NONE);
-                    FunctionArgument functionArgument = FunctionArgument.findIn(c, expression.module, args, 0, false, true);
+                    FunctionArgument functionArgument = FunctionArgument.findIn(c, expression.module, args, 0, false, true, tok.callSite());
                     FunctionValue fun = functionArgument.function;
                     return fun.callInContext(c, t, functionArgument.args);
                 }
@@ -145,5 +149,38 @@ public class Functions
         expression.addImpureFunction("return", lv -> {
             throw new ReturnStatement(lv.size() == 0 ? Value.NULL : lv.get(0));
         });
+
+        // cached(fn, max_size?) => fn
+        // returns function with the same code, reusing results of previous calls with the same arguments
+        expression.addContextFunction("cached", -1, (c, t, lv) ->
+        {
+            if (lv.isEmpty() || lv.size() > 2)
+            {
+                throw new InternalExpressionException("'cached' requires a function and optional maximum number of cached results");
+            }
+            FunctionValue function = FunctionArgument.findIn(c, expression.module, lv.subList(0, 1), 0, false, false).function;
+            int maxSize = lv.size() == 2 ? NumericValue.asNumber(lv.get(1)).getInt() : DEFAULT_CACHE_SIZE;
+            if (maxSize <= 0)
+            {
+                throw new InternalExpressionException("Maximum number of cached results for 'cached' should be positive");
+            }
+            return function.cached(maxSize);
+        });
+
+        expression.addContextFunction("cache_stats", 1, (c, t, lv) ->
+                cacheOf(c, expression, lv.get(0), "cache_stats").stats());
+
+        expression.addContextFunction("cache_clear", 1, (c, t, lv) ->
+                new NumericValue(cacheOf(c, expression, lv.get(0), "cache_clear").clear()));
+    }
+
+    private static FunctionCache cacheOf(Context c, Expression expression, Value function, String name)
+    {
+        FunctionCache cache = FunctionArgument.findIn(c, expression.module, List.of(function), 0, false, false).function.getCache();
+        if (cache == null)
+        {
+            throw new InternalExpressionException("'" + name + "' requires a function made with 'cached'");
+        }
+        return cache;
     }
 }
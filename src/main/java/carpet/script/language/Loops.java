@@ -3,10 +3,12 @@ package carpet.script.language;
 import carpet.script.Context;
 import carpet.script.Expression;
 import carpet.script.LazyValue;
+import carpet.script.VariableFrame;
 import carpet.script.exception.BreakStatement;
 import carpet.script.exception.ContinueStatement;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.value.AbstractListValue;
+import carpet.script.value.LazyListValue;
 import carpet.script.value.ListValue;
 import carpet.script.value.NumericValue;
 import carpet.script.value.Value;
@@ -14,6 +16,9 @@ import carpet.script.value.Value;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
 
 public class Loops
 {
@@ -57,8 +62,10 @@ public class Loops
                 long i = 0;
                 Value lastOne = Value.NULL;
                 //scoping
-                LazyValue defaultVal = c.getVariable("_");
-                c.setVariable("_", (cc, tt) -> new NumericValue(0).bindTo("_"));
+                LazyValue defaultVal = c.getVariable(VariableFrame.ELEMENT);
+                LazyValue.NumericBinding counter = new LazyValue.NumericBinding("_");
+                counter.set(0);
+                c.setVariable(VariableFrame.ELEMENT, counter);
                 while (condition.evalValue(c, Context.BOOLEAN).getBoolean())
                 {
                     try
@@ -77,11 +84,11 @@ public class Loops
                         }
                     }
                     i++;
-                    long seriously = i;
-                    c.setVariable("_", (cc, tt) -> new NumericValue(seriously).bindTo("_"));
+                    counter.set(i);
+                    c.setVariable(VariableFrame.ELEMENT, counter);
                 }
                 //revering scope
-                c.setVariable("_", defaultVal);
+                c.setVariable(VariableFrame.ELEMENT, defaultVal);
                 Value lastValueNoKidding = lastOne;
                 return (cc, tt) -> lastValueNoKidding;
             }
@@ -91,8 +98,10 @@ public class Loops
             long i = 0;
             Value lastOne = Value.NULL;
             //scoping
-            LazyValue defaultVal = c.getVariable("_");
-            c.setVariable("_", (cc, tt) -> new NumericValue(0).bindTo("_"));
+            LazyValue defaultVal = c.getVariable(VariableFrame.ELEMENT);
+            LazyValue.NumericBinding counter = new LazyValue.NumericBinding("_");
+            counter.set(0);
+            c.setVariable(VariableFrame.ELEMENT, counter);
             while (i < limit && condition.evalValue(c, Context.BOOLEAN).getBoolean())
             {
                 try
@@ -111,11 +120,11 @@ public class Loops
                     }
                 }
                 i++;
-                long seriously = i;
-                c.setVariable("_", (cc, tt) -> new NumericValue(seriously).bindTo("_"));
+                counter.set(i);
+                c.setVariable(VariableFrame.ELEMENT, counter);
             }
             //revering scope
-            c.setVariable("_", defaultVal);
+            c.setVariable(VariableFrame.ELEMENT, defaultVal);
             Value lastValueNoKidding = lastOne;
             return (cc, tt) -> lastValueNoKidding;
         });
@@ -128,11 +137,12 @@ public class Loops
             Value lastOne = Value.NULL;
             LazyValue expr = lv.get(1);
             //scoping
-            LazyValue defaultVal = c.getVariable("_");
+            LazyValue defaultVal = c.getVariable(VariableFrame.ELEMENT);
+            LazyValue.NumericBinding counter = new LazyValue.NumericBinding("_");
             for (long i = 0; i < limit; i++)
             {
-                long whyYouAsk = i;
-                c.setVariable("_", (cc, tt) -> new NumericValue(whyYouAsk).bindTo("_"));
+                counter.set(i);
+                c.setVariable(VariableFrame.ELEMENT, counter);
                 try
                 {
                     lastOne = expr.evalValue(c, t);
@@ -150,7 +160,7 @@ public class Loops
                 }
             }
             //revering scope
-            c.setVariable("_", defaultVal);
+            c.setVariable(VariableFrame.ELEMENT, defaultVal);
             Value trulyLastOne = lastOne;
             return (cc, tt) -> trulyLastOne;
         });
@@ -171,8 +181,10 @@ public class Loops
             Iterator<Value> iterator = alv.iterator();
             LazyValue expr = lv.get(1);
             //scoping
-            LazyValue defaultVal = c.getVariable("_");
-            LazyValue iterVal = c.getVariable("_i");
+            LazyValue defaultVal = c.getVariable(VariableFrame.ELEMENT);
+            LazyValue iterVal = c.getVariable(VariableFrame.INDEX);
+            LazyValue.Binding element = new LazyValue.Binding(null, Value.NULL);
+            LazyValue.NumericBinding index = new LazyValue.NumericBinding("_i");
             List<Value> result = new ArrayList<>();
             for (int i = 0; iterator.hasNext(); i++)
             {
@@ -182,9 +194,10 @@ public class Loops
                 }
                 String variable = next.boundVariable;
                 next.bindTo("_");
-                int doYouReally = i;
-                c.setVariable("_", (cc, tt) -> next);
-                c.setVariable("_i", (cc, tt) -> new NumericValue(doYouReally).bindTo("_i"));
+                element.set(next);
+                index.set(i);
+                c.setVariable(VariableFrame.ELEMENT, element);
+                c.setVariable(VariableFrame.INDEX, index);
                 try
                 {
                     result.add(expr.evalValue(c, t));
@@ -206,8 +219,8 @@ public class Loops
             ((AbstractListValue) rval).fatality();
             Value ret = ListValue.wrap(result);
             //revering scope
-            c.setVariable("_", defaultVal);
-            c.setVariable("_i", iterVal);
+            c.setVariable(VariableFrame.ELEMENT, defaultVal);
+            c.setVariable(VariableFrame.INDEX, iterVal);
             return (cc, tt) -> ret;
         });
 
@@ -228,8 +241,10 @@ public class Loops
             Iterator<Value> iterator = alv.iterator();
             LazyValue expr = lv.get(1);
             //scoping
-            LazyValue defaultVal = c.getVariable("_");
-            LazyValue iterVal = c.getVariable("_i");
+            LazyValue defaultVal = c.getVariable(VariableFrame.ELEMENT);
+            LazyValue iterVal = c.getVariable(VariableFrame.INDEX);
+            LazyValue.Binding element = new LazyValue.Binding(null, Value.NULL);
+            LazyValue.NumericBinding index = new LazyValue.NumericBinding("_i");
             List<Value> result = new ArrayList<>();
             for (int i = 0; iterator.hasNext(); i++)
             {
@@ -239,9 +254,10 @@ public class Loops
                 }
                 String veriable = next.boundVariable;
                 next.bindTo("_");
-                int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
-                c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
+                element.set(next);
+                index.set(i);
+                c.setVariable(VariableFrame.ELEMENT, element);
+                c.setVariable(VariableFrame.INDEX, index);
                 try
                 {
                     if (expr.evalValue(c, Context.BOOLEAN).getBoolean())
@@ -266,8 +282,24 @@ public class Loops
             ((AbstractListValue) rval).fatality();
             Value ret = ListValue.wrap(result);
             //revering scope
-            c.setVariable("_", defaultVal);
-            c.setVariable("_i", iterVal);
+            c.setVariable(VariableFrame.ELEMENT, defaultVal);
+            c.setVariable(VariableFrame.INDEX, iterVal);
+            return (cc, tt) -> ret;
+        });
+
+        // lazy_map(list, expr) => iterator
+        // same as map, but evaluates expr for each element only when the iterator is read
+        expression.addLazyFunction("lazy_map", 2, (c, t, lv) ->
+        {
+            Value ret = Pipeline.of(c, lv.get(0).evalValue(c, Context.NONE), lv.get(1), false, "lazy_map");
+            return (cc, tt) -> ret;
+        });
+
+        // lazy_filter(list, expr) => iterator
+        // same as filter, but only tests elements when the iterator is read
+        expression.addLazyFunction("lazy_filter", 2, (c, t, lv) ->
+        {
+            Value ret = Pipeline.of(c, lv.get(0).evalValue(c, Context.NONE), lv.get(1), true, "lazy_filter");
             return (cc, tt) -> ret;
         });
 
@@ -288,8 +320,10 @@ public class Loops
             Iterator<Value> iterator = alv.iterator();
             LazyValue expr = lv.get(1);
             //scoping
-            LazyValue defaultVal = c.getVariable("_");
-            LazyValue iterVal = c.getVariable("_i");
+            LazyValue defaultVal = c.getVariable(VariableFrame.ELEMENT);
+            LazyValue iterVal = c.getVariable(VariableFrame.INDEX);
+            LazyValue.Binding element = new LazyValue.Binding(null, Value.NULL);
+            LazyValue.NumericBinding index = new LazyValue.NumericBinding("_i");
             Value result = Value.NULL;
             for (int i = 0; iterator.hasNext(); i++)
             {
@@ -299,9 +333,10 @@ public class Loops
                 }
                 String variable = next.boundVariable;
                 next.bindTo("_");
-                int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
-                c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
+                element.set(next);
+                index.set(i);
+                c.setVariable(VariableFrame.ELEMENT, element);
+                c.setVariable(VariableFrame.INDEX, index);
                 try
                 {
                     if (expr.evalValue(c, Context.BOOLEAN).getBoolean())
@@ -326,8 +361,8 @@ public class Loops
             //revering scope
             ((AbstractListValue) rval).fatality();
             Value whyWontYouTrustMeJava = result;
-            c.setVariable("_", defaultVal);
-            c.setVariable("_i", iterVal);
+            c.setVariable(VariableFrame.ELEMENT, defaultVal);
+            c.setVariable(VariableFrame.INDEX, iterVal);
             return (cc, tt) -> whyWontYouTrustMeJava;
         });
 
@@ -348,8 +383,10 @@ public class Loops
             Iterator<Value> iterator = alv.iterator();
             LazyValue expr = lv.get(1);
             //scoping
-            LazyValue defaultVal = c.getVariable("_");
-            LazyValue iterVal = c.getVariable("_i");
+            LazyValue defaultVal = c.getVariable(VariableFrame.ELEMENT);
+            LazyValue iterVal = c.getVariable(VariableFrame.INDEX);
+            LazyValue.Binding element = new LazyValue.Binding(null, Value.NULL);
+            LazyValue.NumericBinding index = new LazyValue.NumericBinding("_i");
             LazyValue result = LazyValue.TRUE;
             for (int i = 0; iterator.hasNext(); i++)
             {
@@ -359,9 +396,10 @@ public class Loops
                 }
                 String variable = next.boundVariable;
                 next.bindTo("_");
-                int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
-                c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
+                element.set(next);
+                index.set(i);
+                c.setVariable(VariableFrame.ELEMENT, element);
+                c.setVariable(VariableFrame.INDEX, index);
                 if (!expr.evalValue(c, Context.BOOLEAN).getBoolean())
                 {
                     result = LazyValue.FALSE;
@@ -372,8 +410,8 @@ public class Loops
             }
             //revering scope
             ((AbstractListValue) rval).fatality();
-            c.setVariable("_", defaultVal);
-            c.setVariable("_i", iterVal);
+            c.setVariable(VariableFrame.ELEMENT, defaultVal);
+            c.setVariable(VariableFrame.INDEX, iterVal);
             return result;
         });
 
@@ -421,8 +459,10 @@ public class Loops
             Iterator<Value> iterator = alv.iterator();
             LazyValue expr = lv.get(1);
             //scoping
-            LazyValue defaultVal = c.getVariable("_");
-            LazyValue iterVal = c.getVariable("_i");
+            LazyValue defaultVal = c.getVariable(VariableFrame.ELEMENT);
+            LazyValue iterVal = c.getVariable(VariableFrame.INDEX);
+            LazyValue.Binding element = new LazyValue.Binding(null, Value.NULL);
+            LazyValue.NumericBinding index = new LazyValue.NumericBinding("_i");
             int successCount = 0;
             for (int i = 0; iterator.hasNext(); i++)
             {
@@ -432,9 +472,10 @@ public class Loops
                 }
                 String variable = next.boundVariable;
                 next.bindTo("_");
-                int seriously = i;
-                c.setVariable("_", (cc, tt) -> next);
-                c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
+                element.set(next);
+                index.set(i);
+                c.setVariable(VariableFrame.ELEMENT, element);
+                c.setVariable(VariableFrame.INDEX, index);
                 Value result = Value.FALSE;
                 try
                 {
@@ -460,8 +501,8 @@ public class Loops
             }
             //revering scope
             ((AbstractListValue) rval).fatality();
-            c.setVariable("_", defaultVal);
-            c.setVariable("_i", iterVal);
+            c.setVariable(VariableFrame.ELEMENT, defaultVal);
+            c.setVariable(VariableFrame.INDEX, iterVal);
             long promiseWontChange = successCount;
             return (cc, tt) -> new NumericValue(promiseWontChange);
         });
@@ -494,9 +535,12 @@ public class Loops
             }
 
             //scoping
-            LazyValue defaultVal = c.getVariable("_");
-            LazyValue accumulatorVal = c.getVariable("_a");
-            LazyValue iterVal = c.getVariable("_i");
+            LazyValue defaultVal = c.getVariable(VariableFrame.ELEMENT);
+            LazyValue accumulatorVal = c.getVariable(VariableFrame.ACCUMULATOR);
+            LazyValue iterVal = c.getVariable(VariableFrame.INDEX);
+            LazyValue.Binding element = new LazyValue.Binding(null, Value.NULL);
+            LazyValue.Binding accumulator = new LazyValue.Binding("_a", acc);
+            LazyValue.NumericBinding index = new LazyValue.NumericBinding("_i");
 
             for (int i = 0; iterator.hasNext(); i++)
             {
@@ -506,11 +550,12 @@ public class Loops
                 }
                 String variable = next.boundVariable;
                 next.bindTo("_");
-                Value promiseWontChangeYou = acc;
-                int seriously = i;
-                c.setVariable("_a", (cc, tt) -> promiseWontChangeYou.bindTo("_a"));
-                c.setVariable("_", (cc, tt) -> next);
-                c.setVariable("_i", (cc, tt) -> new NumericValue(seriously).bindTo("_i"));
+                accumulator.set(acc);
+                element.set(next);
+                index.set(i);
+                c.setVariable(VariableFrame.ACCUMULATOR, accumulator);
+                c.setVariable(VariableFrame.ELEMENT, element);
+                c.setVariable(VariableFrame.INDEX, index);
                 try
                 {
                     acc = expr.evalValue(c, t);
@@ -531,12 +576,155 @@ public class Loops
             }
             //reverting scope
             ((AbstractListValue) rval).fatality();
-            c.setVariable("_a", accumulatorVal);
-            c.setVariable("_", defaultVal);
-            c.setVariable("_i", iterVal);
+            c.setVariable(VariableFrame.ACCUMULATOR, accumulatorVal);
+            c.setVariable(VariableFrame.ELEMENT, defaultVal);
+            c.setVariable(VariableFrame.INDEX, iterVal);
 
             Value hopeItsEnoughPromise = acc;
             return (cc, tt) -> hopeItsEnoughPromise;
         });
     }
+
+    /**
+     * Iterator mapping or filtering elements of another list or iterator one at a time, as they are read,
+     * so chains of these don't need to hold intermediate lists. Expression is evaluated in the context
+     * that created the iterator, with '_' and '_i' bound only for the duration of each evaluation.
+     * '_i' is the index in the source, like in map and filter.
+     */
+    private static final class Pipeline extends LazyListValue
+    {
+        private final Context context;
+        private final AbstractListValue source;
+        private final LazyValue expr;
+        private final boolean filter;
+        private final LazyValue.Binding element = new LazyValue.Binding(null, Value.NULL);
+        private final LazyValue.NumericBinding elementIndex = new LazyValue.NumericBinding("_i");
+        private boolean evaluating;
+        private Iterator<Value> iterator;
+        private int index;
+        private boolean ended;
+        private Value pending;
+
+        private Pipeline(Context context, AbstractListValue source, LazyValue expr, boolean filter)
+        {
+            this.context = context;
+            this.source = source;
+            this.expr = expr;
+            this.filter = filter;
+            this.iterator = source.iterator();
+        }
+
+        static Value of(Context c, Value source, LazyValue expr, boolean filter, String name)
+        {
+            if (source.isNull())
+            {
+                return ListValue.of();
+            }
+            if (!(source instanceof final AbstractListValue alv))
+            {
+                throw new InternalExpressionException("First argument of '" + name + "' function should be a list or iterator");
+            }
+            return new Pipeline(c, alv, expr, filter);
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            while (pending == null && !ended)
+            {
+                if (!iterator.hasNext())
+                {
+                    ended = true;
+                    break;
+                }
+                Value next = iterator.next();
+                int i = index++;
+                if (next == Value.EOL)
+                {
+                    continue;
+                }
+                pending = evaluate(next, i);
+            }
+            return pending != null;
+        }
+
+        @Override
+        public Value next()
+        {
+            if (!hasNext())
+            {
+                throw new NoSuchElementException();
+            }
+            Value ret = pending;
+            pending = null;
+            return ret;
+        }
+
+        /**
+         * @return value produced for the element, or null if it is skipped
+         */
+        @Nullable
+        private Value evaluate(Value next, int i)
+        {
+            //scoping
+            LazyValue defaultVal = context.getVariable(VariableFrame.ELEMENT);
+            LazyValue iterVal = context.getVariable(VariableFrame.INDEX);
+            String variable = next.boundVariable;
+            next.bindTo("_");
+            // the expression can read this iterator again, then the bindings of the outer element are still in use
+            boolean nested = evaluating;
+            LazyValue.Binding elementVal = nested ? new LazyValue.Binding(null, Value.NULL) : element;
+            LazyValue.NumericBinding indexVal = nested ? new LazyValue.NumericBinding("_i") : elementIndex;
+            evaluating = true;
+            elementVal.set(next);
+            indexVal.set(i);
+            context.setVariable(VariableFrame.ELEMENT, elementVal);
+            context.setVariable(VariableFrame.INDEX, indexVal);
+            try
+            {
+                if (filter)
+                {
+                    return expr.evalValue(context, Context.BOOLEAN).getBoolean() ? next : null;
+                }
+                return expr.evalValue(context, Context.NONE);
+            }
+            catch (BreakStatement | ContinueStatement stmt)
+            {
+                if (stmt instanceof BreakStatement)
+                {
+                    ended = true;
+                }
+                if (filter)
+                {
+                    return stmt.retval != null && stmt.retval.getBoolean() ? next : null;
+                }
+                return stmt.retval;
+            }
+            finally
+            {
+                evaluating = nested;
+                next.boundVariable = variable;
+                //revering scope
+                context.setVariable(VariableFrame.ELEMENT, defaultVal);
+                context.setVariable(VariableFrame.INDEX, iterVal);
+            }
+        }
+
+        @Override
+        public void reset()
+        {
+            source.fatality();
+            iterator = source.iterator();
+            index = 0;
+            ended = false;
+            pending = null;
+        }
+
+        @Override
+        public Object clone()
+        {
+            // lazy sources keep their position, so each copy needs its own
+            return new Pipeline(context, source instanceof LazyListValue ? (AbstractListValue) ((LazyListValue) source).clone() : source, expr, filter);
+        }
+    }
 }
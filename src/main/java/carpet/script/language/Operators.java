@@ -389,7 +389,14 @@ public class Operators
             String varname = v1.getVariable();
             Value copy = v2.reboundedTo(varname);
             LazyValue boundedLHS = (cc, tt) -> copy;
-            expression.setAnyVariable(c, varname, boundedLHS);
+            if (lv1 instanceof final Expression.VariableReference ref && ref.name().equals(varname))
+            {
+                ref.assign(c, boundedLHS);
+            }
+            else
+            {
+                expression.setAnyVariable(c, varname, boundedLHS);
+            }
             return boundedLHS;
         });
 
@@ -459,7 +466,14 @@ public class Operators
                 Value result = v1.add(v2).bindTo(varname);
                 boundedLHS = (cc, tt) -> result;
             }
-            expression.setAnyVariable(c, varname, boundedLHS);
+            if (lv1 instanceof final Expression.VariableReference ref && ref.name().equals(varname))
+            {
+                ref.assign(c, boundedLHS);
+            }
+            else
+            {
+                expression.setAnyVariable(c, varname, boundedLHS);
+            }
             return boundedLHS;
         });
 
@@ -11,6 +11,7 @@ import carpet.script.value.FunctionValue;
 import carpet.script.value.ListValue;
 import carpet.script.value.MapValue;
 import carpet.script.value.NumericValue;
+import carpet.script.value.PatternCache;
 import carpet.script.value.StringValue;
 import carpet.script.value.Value;
 
@@ -174,7 +175,6 @@ public class Sys
                 throw new InternalExpressionException("'replace' expects string to read, pattern regex, and optional replacement string");
             }
             String data = lv.get(0).getString();
-            String regex = lv.get(1).getString();
             String replacement = "";
             if (lv.size() == 3)
             {
@@ -182,7 +182,7 @@ public class Sys
             }
             try
             {
-                return new StringValue(data.replaceAll(regex, replacement));
+                return new StringValue(PatternCache.get(lv.get(1)).matcher(data).replaceAll(replacement));
             }
             catch (PatternSyntaxException pse)
             {
@@ -197,13 +197,12 @@ public class Sys
                 throw new InternalExpressionException("'replace_first' expects string to read, pattern regex, and optional replacement string");
             }
             String data = lv.get(0).getString();
-            String regex = lv.get(1).getString();
             String replacement = "";
             if (lv.size() == 3)
             {
                 replacement = lv.get(2).getString();
             }
-            return new StringValue(data.replaceFirst(regex, replacement));
+            return new StringValue(PatternCache.get(lv.get(1)).matcher(data).replaceFirst(replacement));
         });
 
         expression.addUnaryFunction("type", v -> new StringValue(v.getTypeString()));
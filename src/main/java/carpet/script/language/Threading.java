@@ -2,16 +2,33 @@ package carpet.script.language;
 
 import carpet.script.Context;
 import carpet.script.Expression;
+import carpet.script.Purity;
+import carpet.script.TaskPool;
 import carpet.script.argument.FunctionArgument;
 import carpet.script.exception.ExitStatement;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.value.BooleanValue;
+import carpet.script.value.FunctionValue;
+import carpet.script.value.LazyListValue;
+import carpet.script.value.ListValue;
+import carpet.script.value.MapValue;
 import carpet.script.value.NumericValue;
+import carpet.script.value.StringValue;
 import carpet.script.value.ThreadValue;
 import carpet.script.value.Value;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
 public class Threading
 {
+    // smaller lists are not worth handing over to other threads
+    private static final int PARALLEL_THRESHOLD = 64;
+    private static final int MIN_LEAF_SIZE = 16;
+
     public static void apply(Expression expression)
     {
         expression.addFunctionWithDelegation("task", -1, false, false, (c, t, expr, tok, lv) ->
@@ -43,6 +60,34 @@ public class Threading
         expression.addContextFunction("task_count", -1, (c, t, lv) ->
                 (!lv.isEmpty()) ? new NumericValue(c.host.taskCount(lv.get(0))) : new NumericValue(c.host.taskCount()));
 
+        // task_pool(executor, settings?) => stats
+        // changes settings of the pool if provided, and returns its current stats, or null if it has not been used yet
+        expression.addContextFunction("task_pool", -1, (c, t, lv) ->
+        {
+            if (lv.isEmpty() || lv.size() > 2)
+            {
+                throw new InternalExpressionException("'task_pool' requires an executor and optional map of settings");
+            }
+            Value pool = lv.get(0);
+            if (lv.size() == 2)
+            {
+                if (!(lv.get(1) instanceof final MapValue settings))
+                {
+                    throw new InternalExpressionException("Settings of the task pool should be a map");
+                }
+                Value virtual = settings.get(StringValue.of("virtual"));
+                Value limit = settings.get(StringValue.of("limit"));
+                int maxTasks = limit.isNull() ? 0 : NumericValue.asNumber(limit).getInt();
+                if (maxTasks < 0)
+                {
+                    throw new InternalExpressionException("Limit of running tasks cannot be negative");
+                }
+                c.host.configurePool(pool, virtual.isNull() ? c.host.virtualTasks : virtual.getBoolean(), maxTasks);
+            }
+            TaskPool executor = c.host.getPool(pool);
+            return executor == null ? Value.NULL : executor.stats();
+        });
+
         expression.addUnaryFunction("task_value", v ->
         {
             if (!(v instanceof final ThreadValue tv))
@@ -187,5 +232,207 @@ public class Threading
             boolean ret = thread.isCoroutine && thread.hasNext();
             return (cc, tt) -> BooleanValue.of(ret);
         });
+
+        // pmap(list, fn, ...args) => list
+        // calls fn(item, ...args) for each item, in parallel if fn is pure
+        expression.addContextFunction("pmap", -1, (c, t, lv) ->
+        {
+            if (lv.size() < 2)
+            {
+                throw new InternalExpressionException("'pmap' requires a list and a function to call");
+            }
+            List<Value> items = items(lv.get(0), "pmap");
+            FunctionArgument functionArgument = FunctionArgument.findIn(c, expression.module, lv, 1, false, false);
+            FunctionValue function = functionArgument.function;
+            List<Value> extraArgs = functionArgument.args;
+            function.checkArgs(extraArgs.size() + 1);
+            for (Value arg : extraArgs)
+            {
+                // iterators keep their position, which calls running at the same time would move for each other
+                if (arg instanceof LazyListValue)
+                {
+                    throw new InternalExpressionException("'pmap' can't pass iterators to the function, convert them to lists first");
+                }
+            }
+            Value[] results = new Value[items.size()];
+            ForkJoinPool pool = items.size() >= PARALLEL_THRESHOLD && Purity.isPure(c, function) ? c.host.getParallelPool() : null;
+            if (pool != null)
+            {
+                pool.invoke(new MapSlice(c, function, items, extraArgs, results, 0, items.size(), leafSize(pool, items.size())));
+            }
+            else
+            {
+                for (int i = 0; i < results.length; i++)
+                {
+                    results[i] = call(c, function, arguments(items.get(i), extraArgs));
+                }
+            }
+            return ListValue.of(results);
+        });
+
+        // preduce(list, fn, initial) => value
+        // reduces items with fn(accumulator, item), in parallel if fn is pure, so fn should be associative
+        expression.addContextFunction("preduce", 3, (c, t, lv) ->
+        {
+            List<Value> items = items(lv.get(0), "preduce");
+            FunctionValue function = FunctionArgument.findIn(c, expression.module, lv.subList(0, 2), 1, false, false).function;
+            function.checkArgs(2);
+            Value initial = lv.get(2);
+            if (items.isEmpty())
+            {
+                return initial;
+            }
+            ForkJoinPool pool = items.size() >= PARALLEL_THRESHOLD && Purity.isPure(c, function) ? c.host.getParallelPool() : null;
+            if (pool != null)
+            {
+                Value reduced = pool.invoke(new ReduceSlice(c, function, items, 0, items.size(), leafSize(pool, items.size())));
+                return call(c, function, List.of(initial, reduced));
+            }
+            Value acc = initial;
+            for (Value item : items)
+            {
+                acc = call(c, function, List.of(acc, item));
+            }
+            return acc;
+        });
+    }
+
+    private static List<Value> items(Value list, String name)
+    {
+        if (list instanceof final ListValue lv)
+        {
+            return lv.getItems();
+        }
+        if (list instanceof final LazyListValue llv)
+        {
+            return llv.unroll();
+        }
+        throw new InternalExpressionException("First argument of '" + name + "' should be a list or iterator");
+    }
+
+    // few pieces per thread, so threads that finish early can take over the remaining work
+    private static int leafSize(ForkJoinPool pool, int size)
+    {
+        return Math.max(MIN_LEAF_SIZE, size / (pool.getParallelism() * 4));
+    }
+
+    private static List<Value> arguments(Value item, List<Value> extraArgs)
+    {
+        List<Value> args = new ArrayList<>(extraArgs.size() + 1);
+        args.add(item);
+        args.addAll(extraArgs);
+        return args;
+    }
+
+    /**
+     * @return copies of values for a single thread, since loops over containers bind their items to loop variables
+     */
+    private static List<Value> copies(List<Value> values)
+    {
+        List<Value> copies = new ArrayList<>(values.size());
+        for (Value value : values)
+        {
+            copies.add(value.deepcopy());
+        }
+        return copies;
+    }
+
+    private static Value call(Context c, FunctionValue function, List<Value> args)
+    {
+        return function.callInContext(c, Context.NONE, args).evalValue(c);
+    }
+
+    /**
+     * Maps a range of items, each piece of the range that is processed on a single thread gets a fresh context
+     * and its own copies of the items, the arguments, and the values the function captured with outer()
+     */
+    private static final class MapSlice extends RecursiveAction
+    {
+        private final Context context;
+        private final FunctionValue function;
+        private final List<Value> items;
+        private final List<Value> extraArgs;
+        private final Value[] results;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        private MapSlice(Context context, FunctionValue function, List<Value> items, List<Value> extraArgs, Value[] results, int from, int to, int leafSize)
+        {
+            this.context = context;
+            this.function = function;
+            this.items = items;
+            this.extraArgs = extraArgs;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= leafSize)
+            {
+                Context c = context.recreate();
+                FunctionValue isolated = function.isolated();
+                List<Value> args = copies(extraArgs);
+                for (int i = from; i < to; i++)
+                {
+                    results[i] = call(c, isolated, arguments(items.get(i).deepcopy(), args));
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(
+                    new MapSlice(context, function, items, extraArgs, results, from, middle, leafSize),
+                    new MapSlice(context, function, items, extraArgs, results, middle, to, leafSize)
+            );
+        }
+    }
+
+    /**
+     * Reduces a range of items without the initial value, combining results of both halves in order. Like with
+     * pmap, each thread works on its own copies of the items and of the values the function captured with outer()
+     */
+    private static final class ReduceSlice extends RecursiveTask<Value>
+    {
+        private final Context context;
+        private final FunctionValue function;
+        private final List<Value> items;
+        private final int from;
+        private final int to;
+        private final int leafSize;
+
+        private ReduceSlice(Context context, FunctionValue function, List<Value> items, int from, int to, int leafSize)
+        {
+            this.context = context;
+            this.function = function;
+            this.items = items;
+            this.from = from;
+            this.to = to;
+            this.leafSize = leafSize;
+        }
+
+        @Override
+        protected Value compute()
+        {
+            Context c = context.recreate();
+            if (to - from <= leafSize)
+            {
+                FunctionValue isolated = function.isolated();
+                Value acc = items.get(from).deepcopy();
+                for (int i = from + 1; i < to; i++)
+                {
+                    acc = call(c, isolated, List.of(acc, items.get(i).deepcopy()));
+                }
+                return acc;
+            }
+            int middle = (from + to) >>> 1;
+            ReduceSlice right = new ReduceSlice(context, function, items, middle, to, leafSize);
+            right.fork();
+            Value left = new ReduceSlice(context, function, items, from, middle, leafSize).compute();
+            return call(c, function.isolated(), List.of(left, right.join()));
+        }
     }
 }
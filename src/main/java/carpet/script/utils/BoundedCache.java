@@ -0,0 +1,154 @@
+package carpet.script.utils;
+
+import carpet.script.value.MapValue;
+import carpet.script.value.NumericValue;
+import carpet.script.value.StringValue;
+import carpet.script.value.Value;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.Nullable;
+
+/**
+ * Cache of things parsed from strings by scarpet, like block states, items or selectors, that can be reached
+ * from any thread running scarpet code. Least recently used entries are dropped once the cache is full.
+ * All caches created here are registered by name, so they can be inspected and flushed with /script caches.
+ */
+public final class BoundedCache<K, V>
+{
+    private static final Map<String, BoundedCache<?, ?>> caches = new ConcurrentSkipListMap<>();
+
+    public final String name;
+    public final int maxSize;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final Map<K, V> entries;
+
+    private BoundedCache(String name, int maxSize)
+    {
+        this.name = name;
+        this.maxSize = maxSize;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+            {
+                if (size() > BoundedCache.this.maxSize)
+                {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static <K, V> BoundedCache<K, V> create(String name, int maxSize)
+    {
+        BoundedCache<K, V> cache = new BoundedCache<>(name, maxSize);
+        if (caches.putIfAbsent(name, cache) != null)
+        {
+            throw new IllegalArgumentException("Cache " + name + " already exists");
+        }
+        return cache;
+    }
+
+    @Nullable
+    public static BoundedCache<?, ?> get(String name)
+    {
+        return caches.get(name);
+    }
+
+    /**
+     * @return all caches, by name
+     */
+    public static List<BoundedCache<?, ?>> all()
+    {
+        return new ArrayList<>(caches.values());
+    }
+
+    /**
+     * @return cached value, or null if there is none, in which case the caller is expected to compute it,
+     * outside of any lock, and {@link #put} it
+     */
+    @Nullable
+    public V get(K key)
+    {
+        V value;
+        synchronized (entries)
+        {
+            value = entries.get(key);
+        }
+        if (value == null)
+        {
+            misses.increment();
+        }
+        else
+        {
+            hits.increment();
+        }
+        return value;
+    }
+
+    public void put(K key, V value)
+    {
+        synchronized (entries)
+        {
+            entries.put(key, value);
+        }
+    }
+
+    public int size()
+    {
+        synchronized (entries)
+        {
+            return entries.size();
+        }
+    }
+
+    public long hits()
+    {
+        return hits.sum();
+    }
+
+    public long misses()
+    {
+        return misses.sum();
+    }
+
+    public long evictions()
+    {
+        return evictions.sum();
+    }
+
+    /**
+     * @return number of entries that were removed
+     */
+    public int clear()
+    {
+        synchronized (entries)
+        {
+            int size = entries.size();
+            entries.clear();
+            return size;
+        }
+    }
+
+    public Value stats()
+    {
+        Map<Value, Value> stats = new HashMap<>();
+        stats.put(StringValue.of("size"), new NumericValue(size()));
+        stats.put(StringValue.of("max_size"), new NumericValue(maxSize));
+        stats.put(StringValue.of("hits"), new NumericValue(hits()));
+        stats.put(StringValue.of("misses"), new NumericValue(misses()));
+        stats.put(StringValue.of("evictions"), new NumericValue(evictions()));
+        return MapValue.wrap(stats);
+    }
+}
@@ -0,0 +1,140 @@
+package carpet.script.utils;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.chunk.storage.RegionStorageInfo;
+
+/**
+ * Which chunks have entries in region files, read from location tables in headers of region files, so checking
+ * many chunks of the same region doesn't open the region file each time. Chunks saved after a header was read
+ * are added as they are written, since the header on disk is only updated once the write goes through.
+ */
+public final class RegionIndex
+{
+    // location table at the start of each region file, one int per chunk, 0 for chunks that are not there
+    private static final int HEADER_SIZE = 32 * 32 * 4;
+
+    private static final Map<RegionStorageInfo, RegionIndex> indices = new ConcurrentHashMap<>();
+
+    private final Long2ObjectMap<Region> regions = new Long2ObjectOpenHashMap<>();
+
+    private static final class Region
+    {
+        // one bit per chunk, by chunk index in the region
+        private final long[] chunks = new long[16];
+        private boolean headerRead;
+
+        private boolean has(int index)
+        {
+            return (chunks[index >> 6] & (1L << index)) != 0;
+        }
+
+        private void add(int index)
+        {
+            chunks[index >> 6] |= 1L << index;
+        }
+    }
+
+    private RegionIndex()
+    {
+    }
+
+    private static int indexOf(ChunkPos pos)
+    {
+        return pos.getRegionLocalX() + pos.getRegionLocalZ() * 32;
+    }
+
+    /**
+     * @param regionPath region file the chunk would be in
+     * @return whether the chunk has an entry in its region file
+     * @throws IOException if the header of the region file can't be read
+     */
+    public static boolean hasChunk(RegionStorageInfo storage, Path regionPath, ChunkPos pos) throws IOException
+    {
+        RegionIndex index = indices.computeIfAbsent(storage, s -> new RegionIndex());
+        long key = ChunkPos.asLong(pos.getRegionX(), pos.getRegionZ());
+        synchronized (index)
+        {
+            Region region = index.regions.get(key);
+            if (region != null && region.headerRead)
+            {
+                return region.has(indexOf(pos));
+            }
+        }
+        // reading outside of the lock, so checks in other regions don't wait for it
+        long[] header = readHeader(regionPath);
+        synchronized (index)
+        {
+            Region region = index.regions.computeIfAbsent(key, k -> new Region());
+            if (!region.headerRead)
+            {
+                for (int i = 0; i < header.length; i++)
+                {
+                    region.chunks[i] |= header[i];
+                }
+                region.headerRead = true;
+            }
+            return region.has(indexOf(pos));
+        }
+    }
+
+    /**
+     * Adds a chunk that is being written to its region file.
+     */
+    public static void chunkSaved(RegionStorageInfo storage, ChunkPos pos)
+    {
+        RegionIndex index = indices.computeIfAbsent(storage, s -> new RegionIndex());
+        synchronized (index)
+        {
+            index.regions.computeIfAbsent(ChunkPos.asLong(pos.getRegionX(), pos.getRegionZ()), k -> new Region()).add(indexOf(pos));
+        }
+    }
+
+    /**
+     * Forgets all regions, so they are read again from a world that is loaded next.
+     */
+    public static void clear()
+    {
+        indices.clear();
+    }
+
+    private static long[] readHeader(Path regionPath) throws IOException
+    {
+        long[] chunks = new long[16];
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(regionPath, StandardOpenOption.READ))
+        {
+            while (header.hasRemaining())
+            {
+                if (channel.read(header) < 0)
+                {
+                    break;
+                }
+            }
+        }
+        catch (NoSuchFileException ignored)
+        {
+            return chunks;
+        }
+        header.flip();
+        for (int i = 0; header.remaining() >= 4; i++)
+        {
+            if (header.getInt() != 0)
+            {
+                chunks[i >> 6] |= 1L << i;
+            }
+        }
+        return chunks;
+    }
+}
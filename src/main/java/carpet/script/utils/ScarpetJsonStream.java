@@ -0,0 +1,208 @@
+package carpet.script.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.google.gson.stream.MalformedJsonException;
+
+import carpet.script.value.ListValue;
+import carpet.script.value.MapValue;
+import carpet.script.value.NumericValue;
+import carpet.script.value.StringValue;
+import carpet.script.value.Value;
+
+/**
+ * Converts values to and from json text directly, without building a tree of json elements first.
+ * Gives the same results as {@link Value#toJson()} and {@link ScarpetJsonDeserializer}.
+ */
+public final class ScarpetJsonStream
+{
+    // writes json of values other than lists, maps and strings
+    private static final TypeAdapter<JsonElement> ELEMENTS = new Gson().getAdapter(JsonElement.class);
+
+    private ScarpetJsonStream()
+    {
+    }
+
+    /**
+     * @return value as compact json, same as {@code value.toJson().toString()}
+     */
+    public static String encode(Value value)
+    {
+        StringWriter out = new StringWriter();
+        try
+        {
+            JsonWriter writer = new JsonWriter(out);
+            writer.setLenient(true);
+            write(writer, value);
+        }
+        catch (IOException e)
+        {
+            // can't happen, writing to a string
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Writes value as indented json, same as pretty printing gson would, leaving out map entries with null values.
+     * Like gson, writes NaN and infinite numbers as they are, even though they are not valid json.
+     */
+    public static void writePretty(Writer out, Value value) throws IOException
+    {
+        JsonWriter writer = new JsonWriter(out);
+        writer.setLenient(true);
+        writer.setIndent("  ");
+        writer.setSerializeNulls(false);
+        write(writer, value);
+        writer.flush();
+    }
+
+    public static void write(JsonWriter out, Value value) throws IOException
+    {
+        if (value instanceof final ListValue list)
+        {
+            out.beginArray();
+            for (Value item : list.getItems())
+            {
+                write(out, item);
+            }
+            out.endArray();
+        }
+        else if (value instanceof final MapValue map)
+        {
+            Map<Value, Value> entries = map.getMap();
+            List<Value> keys = new ArrayList<>(entries.keySet());
+            Collections.sort(keys);
+            // different keys can have the same string, later ones replace values of earlier ones, like in a json object
+            Map<String, Value> fields = new LinkedHashMap<>();
+            keys.forEach(k -> fields.put(k.getString(), entries.get(k)));
+            out.beginObject();
+            for (Map.Entry<String, Value> field : fields.entrySet())
+            {
+                out.name(field.getKey());
+                write(out, field.getValue());
+            }
+            out.endObject();
+        }
+        else if (value.getClass() == StringValue.class)
+        {
+            out.value(value.getString());
+        }
+        else
+        {
+            ELEMENTS.write(out, value.toJson());
+        }
+    }
+
+    /**
+     * @return value of the whole json text, or null value if the text is empty
+     * @throws JsonParseException if the text is not valid json, or has anything after the first json value
+     */
+    public static Value decode(String json) throws JsonParseException
+    {
+        try
+        {
+            return readDocument(new StringReader(json));
+        }
+        catch (IOException e)
+        {
+            // can't happen, reading from a string
+            throw new JsonParseException(e);
+        }
+    }
+
+    /**
+     * @return value of the whole json document, or null value if the document is empty
+     * @throws JsonParseException if the document is not valid json, or has anything after the first json value
+     * @throws IOException if reading fails
+     */
+    public static Value readDocument(Reader in) throws IOException
+    {
+        JsonReader reader = new JsonReader(in);
+        reader.setLenient(true);
+        try
+        {
+            if (reader.peek() == JsonToken.END_DOCUMENT)
+            {
+                return Value.NULL;
+            }
+            Value value = read(reader);
+            if (reader.peek() != JsonToken.END_DOCUMENT)
+            {
+                throw new JsonParseException("JSON document was not fully consumed");
+            }
+            return value;
+        }
+        catch (MalformedJsonException | EOFException | IllegalStateException | NumberFormatException e)
+        {
+            throw new JsonParseException(e);
+        }
+    }
+
+    public static Value read(JsonReader in) throws IOException
+    {
+        switch (in.peek())
+        {
+            case BEGIN_OBJECT ->
+            {
+                Map<Value, Value> map = new HashMap<>();
+                in.beginObject();
+                while (in.hasNext())
+                {
+                    String key = in.nextName();
+                    map.put(new StringValue(key), read(in));
+                }
+                in.endObject();
+                return MapValue.wrap(map);
+            }
+            case BEGIN_ARRAY ->
+            {
+                List<Value> list = new ArrayList<>();
+                in.beginArray();
+                while (in.hasNext())
+                {
+                    list.add(read(in));
+                }
+                in.endArray();
+                return new ListValue(list);
+            }
+            case STRING ->
+            {
+                return new StringValue(in.nextString());
+            }
+            case NUMBER ->
+            {
+                // integers that fit in a long stay exact, like they do when read from a json tree
+                return new NumericValue(in.nextString());
+            }
+            case BOOLEAN ->
+            {
+                return in.nextBoolean() ? Value.TRUE : Value.FALSE;
+            }
+            case NULL ->
+            {
+                in.nextNull();
+                return Value.NULL;
+            }
+            default -> throw new IllegalStateException("Unexpected " + in.peek() + " at " + in.getPath());
+        }
+    }
+}
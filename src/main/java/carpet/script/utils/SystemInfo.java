@@ -1,5 +1,6 @@
 package carpet.script.utils;
 
+import carpet.script.CallSiteCache;
 import carpet.script.CarpetContext;
 import carpet.script.CarpetScriptHost;
 import carpet.script.external.Carpet;
@@ -9,6 +10,7 @@ import carpet.script.value.EntityValue;
 import carpet.script.value.ListValue;
 import carpet.script.value.MapValue;
 import carpet.script.value.NumericValue;
+import carpet.script.value.PatternCache;
 import carpet.script.value.StringValue;
 import carpet.script.value.Value;
 import carpet.script.value.ValueConversions;
@@ -43,6 +45,11 @@ public class SystemInfo
         put("app_list", c -> ListValue.wrap(((CarpetScriptHost) c.host).scriptServer().modules.keySet().stream().filter(Objects::nonNull).map(StringValue::new)));
         put("app_scope", c -> StringValue.of((c.host).isPerUser() ? "player" : "global"));
         put("app_players", c -> ListValue.wrap(c.host.getUserList().stream().map(StringValue::new)));
+        put("app_task_pools", c -> {
+            Map<Value, Value> pools = new HashMap<>();
+            c.host.getPools().forEach((pool, executor) -> pools.put(pool, executor.stats()));
+            return MapValue.wrap(pools);
+        });
 
         put("world_name", c -> new StringValue(c.server().getWorldData().getLevelName()));
         put("world_seed", c -> new NumericValue(c.level().getSeed()));
@@ -185,6 +192,24 @@ public class SystemInfo
             return ListValue.of(new NumericValue(rotation.x), new NumericValue(rotation.y));
         });
         put("scarpet_version", c -> StringValue.of(Carpet.getCarpetVersion()));
+        put("scarpet_call_cache", c -> {
+            Map<Value, Value> stats = new HashMap<>();
+            stats.put(StringValue.of("hits"), new NumericValue(CallSiteCache.hits()));
+            stats.put(StringValue.of("misses"), new NumericValue(CallSiteCache.misses()));
+            return MapValue.wrap(stats);
+        });
+        put("scarpet_regex_cache", c -> {
+            Map<Value, Value> stats = new HashMap<>();
+            stats.put(StringValue.of("hits"), new NumericValue(PatternCache.hits()));
+            stats.put(StringValue.of("misses"), new NumericValue(PatternCache.misses()));
+            stats.put(StringValue.of("size"), new NumericValue(PatternCache.size()));
+            return MapValue.wrap(stats);
+        });
+        put("scarpet_caches", c -> {
+            Map<Value, Value> caches = new HashMap<>();
+            BoundedCache.all().forEach(cache -> caches.put(StringValue.of(cache.name), cache.stats()));
+            return MapValue.wrap(caches);
+        });
     }};
 
     public static Value get(String what, CarpetContext cc)
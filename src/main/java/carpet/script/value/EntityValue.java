@@ -9,6 +9,7 @@ import carpet.script.EntityEventsGroup;
 import carpet.script.argument.Vector3Argument;
 import carpet.script.exception.InternalExpressionException;
 import carpet.script.external.Carpet;
+import carpet.script.utils.BoundedCache;
 import carpet.script.utils.EntityTools;
 import carpet.script.utils.InputValidator;
 import com.mojang.brigadier.StringReader;
@@ -112,7 +113,7 @@ public class EntityValue extends Value
         return e == null ? Value.NULL : new EntityValue(e);
     }
 
-    private static final Map<String, EntitySelector> selectorCache = new HashMap<>();
+    private static final BoundedCache<String, EntitySelector> selectorCache = BoundedCache.create("selectors", 1000);
 
     public static Collection<? extends Entity> getEntitiesFromSelector(CommandSourceStack source, String selector)
     {
@@ -431,15 +432,15 @@ public class EntityValue extends Value
         put("removed", (entity, arg) -> BooleanValue.of(entity.isRemoved()));
         put("uuid", (e, a) -> new StringValue(e.getStringUUID()));
         put("id", (e, a) -> new NumericValue(e.getId()));
-        put("pos", (e, a) -> ListValue.of(new NumericValue(e.getX()), new NumericValue(e.getY()), new NumericValue(e.getZ())));
-        put("location", (e, a) -> ListValue.of(new NumericValue(e.getX()), new NumericValue(e.getY()), new NumericValue(e.getZ()), new NumericValue(e.getYRot()), new NumericValue(e.getXRot())));
+        put("pos", (e, a) -> ListValue.ofDoubles(e.getX(), e.getY(), e.getZ()));
+        put("location", (e, a) -> ListValue.ofDoubles(e.getX(), e.getY(), e.getZ(), e.getYRot(), e.getXRot()));
         put("x", (e, a) -> new NumericValue(e.getX()));
         put("y", (e, a) -> new NumericValue(e.getY()));
         put("z", (e, a) -> new NumericValue(e.getZ()));
         put("motion", (e, a) ->
         {
             Vec3 velocity = e.getDeltaMovement();
-            return ListValue.of(new NumericValue(velocity.x), new NumericValue(velocity.y), new NumericValue(velocity.z));
+            return ListValue.ofDoubles(velocity.x, velocity.y, velocity.z);
         });
         put("motion_x", (e, a) -> new NumericValue(e.getDeltaMovement().x));
         put("motion_y", (e, a) -> new NumericValue(e.getDeltaMovement().y));
@@ -487,7 +488,7 @@ public class EntityValue extends Value
         put("pitch", (e, a) -> new NumericValue(e.getXRot()));
         put("look", (e, a) -> {
             Vec3 look = e.getLookAngle();
-            return ListValue.of(new NumericValue(look.x), new NumericValue(look.y), new NumericValue(look.z));
+            return ListValue.ofDoubles(look.x, look.y, look.z);
         });
         put("is_burning", (e, a) -> BooleanValue.of(e.isOnFire()));
         put("fire", (e, a) -> new NumericValue(e.getRemainingFireTicks()));
@@ -0,0 +1,95 @@
+package carpet.script.value;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Results of calls to a function made with {@code cached(fn, max_size)}, by the values of their arguments.
+ * Least recently used results are dropped once there are more than max size of them. Containers are copied
+ * on the way in and out, so changing arguments or results of a call later doesn't change what is cached.
+ */
+public class FunctionCache
+{
+    public final int maxSize;
+    private final Map<List<Value>, Value> results;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    public FunctionCache(int maxSize)
+    {
+        this.maxSize = maxSize;
+        this.results = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Value>, Value> eldest)
+            {
+                if (size() > FunctionCache.this.maxSize)
+                {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * @return cached result of the call, or result of the call made now if there is none
+     */
+    public Value get(List<Value> args, Supplier<Value> call)
+    {
+        List<Value> key = new ArrayList<>(args.size());
+        for (Value arg : args)
+        {
+            key.add(copy(arg));
+        }
+        synchronized (this)
+        {
+            Value cached = results.get(key);
+            if (cached != null)
+            {
+                hits++;
+                return copy(cached);
+            }
+            misses++;
+        }
+        // not holding the lock, since the function can call itself, or take long
+        Value result = call.get();
+        synchronized (this)
+        {
+            results.put(key, copy(result));
+        }
+        return result;
+    }
+
+    private static Value copy(Value value)
+    {
+        return value instanceof ContainerValueInterface ? value.deepcopy() : value;
+    }
+
+    /**
+     * @return number of results that were removed
+     */
+    public synchronized int clear()
+    {
+        int size = results.size();
+        results.clear();
+        return size;
+    }
+
+    public synchronized Value stats()
+    {
+        Map<Value, Value> stats = new HashMap<>();
+        stats.put(StringValue.of("size"), new NumericValue(results.size()));
+        stats.put(StringValue.of("max_size"), new NumericValue(maxSize));
+        stats.put(StringValue.of("hits"), new NumericValue(hits));
+        stats.put(StringValue.of("misses"), new NumericValue(misses));
+        stats.put(StringValue.of("evictions"), new NumericValue(evictions));
+        return MapValue.wrap(stats);
+    }
+}
@@ -15,6 +15,7 @@ import carpet.script.exception.ReturnStatement;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Consumer;
@@ -36,6 +37,9 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
     private final String varArgs;
     private static long variantCounter = 1;
     private long variant;
+    // results of earlier calls, for functions made with 'cached'
+    @Nullable
+    private FunctionCache cache = null;
 
     private FunctionValue(Expression expression, Token token, String name, LazyValue body, List<String> args, String varArgs)
     {
@@ -101,9 +105,48 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
         FunctionValue ret = new FunctionValue(expression, token, name, body, args, varArgs);
         ret.outerState = this.outerState;
         ret.variant = this.variant;
+        ret.cache = this.cache;
         return ret;
     }
 
+    /**
+     * @return new function running the same code, that reuses results of earlier calls with the same arguments
+     */
+    public FunctionValue cached(int maxSize)
+    {
+        FunctionValue ret = new FunctionValue(expression, token, name, body, args, varArgs);
+        ret.outerState = this.outerState;
+        ret.variant = variantCounter++;
+        ret.cache = new FunctionCache(maxSize);
+        return ret;
+    }
+
+    /**
+     * @return same function with its own copies of the values captured with outer(), or this function if it
+     * captures nothing, so calls on different threads don't share containers
+     */
+    public FunctionValue isolated()
+    {
+        if (outerState == null)
+        {
+            return this;
+        }
+        FunctionValue ret = (FunctionValue) clone();
+        ret.outerState = new HashMap<>();
+        outerState.forEach((outer, lazyValue) ->
+        {
+            Value copy = lazyValue.evalValue(null).deepcopy();
+            ret.outerState.put(outer, (c, t) -> copy);
+        });
+        return ret;
+    }
+
+    @Nullable
+    public FunctionCache getCache()
+    {
+        return cache;
+    }
+
     @Override
     public int hashCode()
     {
@@ -157,11 +200,23 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
         return varArgs != null;
     }
 
+    /**
+     * Call to a function that is left to make once the body of the calling function is done
+     */
+    public record TailCall(Context context, FunctionValue function, List<Value> args, Context.Type type)
+    {
+    }
+
     public LazyValue callInContext(Context c, Context.Type type, List<Value> params)
+    {
+        return complete(evalInContext(c, type, params));
+    }
+
+    private Object evalInContext(Context c, Context.Type type, List<Value> params)
     {
         try
         {
-            return execute(c, type, expression, token, params, null);
+            return eval(c, type, expression, token, params, null);
         }
         catch (ExpressionException exc)
         {
@@ -179,6 +234,20 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
         }
     }
 
+    /**
+     * Makes the calls left by function bodies, one after another, until one of them returns a value, so chains
+     * of tail calls, like tail recursion, run in constant stack space
+     */
+    private static LazyValue complete(Object result)
+    {
+        while (result instanceof final TailCall call)
+        {
+            result = call.function().evalInContext(call.context(), call.type(), call.args());
+        }
+        Value retVal = (Value) result;
+        return (cc, tt) -> retVal;
+    }
+
     public void checkArgs(int candidates)
     {
         int actual = getArguments().size();
@@ -221,6 +290,24 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
     }
 
     public LazyValue execute(Context c, Context.Type type, Expression e, Token t, List<Value> params, @Nullable ThreadValue freshNewCallingThread)
+    {
+        return complete(eval(c, type, e, t, params, freshNewCallingThread));
+    }
+
+    /**
+     * @return value returned by the function, or a call it ended with, which is left to the caller to make
+     */
+    private Object eval(Context c, Context.Type type, Expression e, Token t, List<Value> params, @Nullable ThreadValue freshNewCallingThread)
+    {
+        if (cache != null)
+        {
+            // cached results need to be complete, so calls the function ended with are made here
+            return cache.get(params, () -> complete(evalBody(c, type, e, t, params, freshNewCallingThread)).evalValue(c));
+        }
+        return evalBody(c, type, e, t, params, freshNewCallingThread);
+    }
+
+    private Object evalBody(Context c, Context.Type type, Expression e, Token t, List<Value> params, @Nullable ThreadValue freshNewCallingThread)
     {
         assertArgsOk(params, fixedArgs -> {
             if (fixedArgs)  // wrong number of args for fixed args
@@ -240,6 +327,8 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
             );
         });
         Context newFrame = c.recreate();
+        // locals of the body get the slots they were given when the function was parsed
+        newFrame.frame().adopt(expression.variableLayout());
         if (freshNewCallingThread != null)
         {
             newFrame.setThreadContext(freshNewCallingThread);
@@ -266,10 +355,9 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
             newFrame.setVariable(varArgs, (cc, tt) -> rest);
 
         }
-        Value retVal;
         try
         {
-            retVal = body.evalValue(newFrame, type); // todo not sure if we need to propagete type / consider boolean context in defined functions - answer seems ye
+            return LazyValue.TailValue.evalTail(body, newFrame, type); // todo not sure if we need to propagete type / consider boolean context in defined functions - answer seems ye
         }
         catch (BreakStatement | ContinueStatement exc)
         {
@@ -277,10 +365,8 @@ public class FunctionValue extends Value implements Fluff.ILazyFunction
         }
         catch (ReturnStatement returnStatement)
         {
-            retVal = returnStatement.retval;
+            return returnStatement.retval;
         }
-        Value otherRetVal = retVal;
-        return (cc, tt) -> otherRetVal;
     }
 
     public Expression getExpression()
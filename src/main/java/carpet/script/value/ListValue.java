@@ -61,7 +61,15 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
     @Override
     public Value deepcopy()
     {
-        List<Value> copyItems = new ArrayList<>(items.size());
+        if (items instanceof NumericVector vector)
+        {
+            return new ListValue(vector.deepcopy());
+        }
+        if (items instanceof PersistentList persistent)
+        {
+            return new ListValue(persistent.deepcopy());
+        }
+        List<Value> copyItems = new PersistentList();
         for (Value entry : items)
         {
             copyItems.add(entry.deepcopy());
@@ -71,7 +79,7 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
 
     public ListValue(Collection<? extends Value> list)
     {
-        items = new ArrayList<>(list);
+        items = new PersistentList(list);
     }
 
     protected ListValue(List<Value> list)
@@ -81,7 +89,21 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
 
     public static Value fromTriple(double a, double b, double c)
     {
-        return ListValue.of(new NumericValue(a), new NumericValue(b), new NumericValue(c));
+        return new ListValue(NumericVector.ofDoubles(a, b, c));
+    }
+
+    /**
+     * List of numbers stored without boxing each of them in a separate value, which falls back to a regular list
+     * when anything else is added to it later on
+     */
+    public static ListValue ofDoubles(double... values)
+    {
+        return new ListValue(NumericVector.ofDoubles(values));
+    }
+
+    public static ListValue ofLongs(long... values)
+    {
+        return new ListValue(NumericVector.ofLongs(values));
     }
 
     public static Value fromTriple(int a, int b, int c)
@@ -102,7 +124,7 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
 
     public static ListValue of(Value... list)
     {
-        return new ListValue(new ArrayList<>(Arrays.asList(list)));
+        return new ListValue(new PersistentList(Arrays.asList(list)));
     }
 
     public static ListValue ofNums(Number... list)
@@ -123,12 +145,17 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
 
     private ListValue()
     {
-        items = new ArrayList<>();
+        items = new PersistentList();
     }
 
     @Override
     public Value add(Value other)
     {
+        NumericVector packed = combineNumbers(other, NumericVector.Operation.ADD);
+        if (packed != null)
+        {
+            return new ListValue(packed);
+        }
         ListValue output = new ListValue();
         if (other instanceof ListValue list)
         {
@@ -155,6 +182,20 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
         return output;
     }
 
+    /**
+     * Tries to do the arithmetic directly on numbers, without dispatching on each element
+     *
+     * @return null if any of the operands is not a number, or lists are of different sizes
+     */
+    private NumericVector combineNumbers(Value other, NumericVector.Operation op)
+    {
+        if (other instanceof ListValue list)
+        {
+            return list.items.size() == items.size() ? NumericVector.combine(items, list.items, op) : null;
+        }
+        return other instanceof NumericValue number && NumericVector.isPlainNumber(number) ? NumericVector.combine(items, number, op) : null;
+    }
+
     @Override
     public void append(Value v)
     {
@@ -164,6 +205,11 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
     @Override
     public Value subtract(Value other)
     {
+        NumericVector packed = combineNumbers(other, NumericVector.Operation.SUBTRACT);
+        if (packed != null)
+        {
+            return new ListValue(packed);
+        }
         ListValue output = new ListValue();
         if (other instanceof ListValue list)
         {
@@ -199,6 +245,11 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
     @Override
     public Value multiply(Value other)
     {
+        NumericVector packed = combineNumbers(other, NumericVector.Operation.MULTIPLY);
+        if (packed != null)
+        {
+            return new ListValue(packed);
+        }
         ListValue output = new ListValue();
         if (other instanceof ListValue list)
         {
@@ -228,6 +279,11 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
     @Override
     public Value divide(Value other)
     {
+        NumericVector packed = combineNumbers(other, NumericVector.Operation.DIVIDE);
+        if (packed != null)
+        {
+            return new ListValue(packed);
+        }
         ListValue output = new ListValue();
         if (other instanceof ListValue list)
         {
@@ -296,6 +352,10 @@ public class ListValue extends AbstractListValue implements ContainerValueInterf
     @Override
     public Iterator<Value> iterator()
     {
+        if (items instanceof PersistentList persistent)
+        {
+            return persistent.iterator();
+        }
         return new ArrayList<>(items).iterator();
     } // should be thread safe
 
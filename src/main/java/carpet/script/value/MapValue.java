@@ -6,7 +6,6 @@ import com.google.gson.JsonObject;
 
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -23,7 +22,7 @@ public class MapValue extends AbstractListValue implements ContainerValueInterfa
 
     private MapValue()
     {
-        map = new HashMap<>();
+        map = new PersistentMap();
     }
 
     public MapValue(List<Value> kvPairs)
@@ -41,6 +40,10 @@ public class MapValue extends AbstractListValue implements ContainerValueInterfa
     @Override
     public Iterator<Value> iterator()
     {
+        if (map instanceof PersistentMap persistent)
+        {
+            return persistent.keySet().iterator();
+        }
         return new ArrayList<>(map.keySet()).iterator();
     }
 
@@ -86,7 +89,11 @@ public class MapValue extends AbstractListValue implements ContainerValueInterfa
     @Override
     public Value deepcopy()
     {
-        Map<Value, Value> copyMap = new HashMap<>();
+        if (map instanceof PersistentMap persistent)
+        {
+            return new MapValue(persistent.deepcopy());
+        }
+        Map<Value, Value> copyMap = new PersistentMap();
         map.forEach((key, value) -> copyMap.put(key.deepcopy(), value.deepcopy()));
         return new MapValue(copyMap);
     }
@@ -104,7 +111,7 @@ public class MapValue extends AbstractListValue implements ContainerValueInterfa
     @Override
     public Value add(Value o)
     {
-        Map<Value, Value> newItems = new HashMap<>(map);
+        Map<Value, Value> newItems = map instanceof PersistentMap persistent ? persistent.fork() : new PersistentMap(map);
         if (o instanceof MapValue mapValue)
         {
             newItems.putAll(mapValue.map);
@@ -0,0 +1,78 @@
+package carpet.script.value;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import net.minecraft.nbt.CollectionTag;
+import net.minecraft.nbt.Tag;
+
+/**
+ * Storage of a list value parsed from a list or array tag, which decodes elements of the tag only once they
+ * are read, the same way {@link NBTMapView} does for compound tags.
+ */
+final class NBTListView extends AbstractList<Value> implements RandomAccess
+{
+    // decoded elements, or tags that were not read yet
+    private final List<Object> elements;
+
+    NBTListView(CollectionTag tag)
+    {
+        elements = new ArrayList<>(tag.size());
+        for (Tag element : tag)
+        {
+            elements.add(element);
+        }
+    }
+
+    @Override
+    public int size()
+    {
+        return elements.size();
+    }
+
+    @Override
+    public Value get(int index)
+    {
+        Object stored = elements.get(index);
+        if (stored instanceof final Tag tag)
+        {
+            Value value = NBTSerializableValue.decodeTagLazy(tag);
+            elements.set(index, value);
+            return value;
+        }
+        return (Value) stored;
+    }
+
+    @Override
+    public Value set(int index, Value value)
+    {
+        Value previous = get(index);
+        elements.set(index, value);
+        return previous;
+    }
+
+    @Override
+    public void add(int index, Value value)
+    {
+        elements.add(index, value);
+        modCount++;
+    }
+
+    @Override
+    public Value remove(int index)
+    {
+        Value previous = get(index);
+        elements.remove(index);
+        modCount++;
+        return previous;
+    }
+
+    @Override
+    public void clear()
+    {
+        elements.clear();
+        modCount++;
+    }
+}
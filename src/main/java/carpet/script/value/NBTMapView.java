@@ -0,0 +1,178 @@
+package carpet.script.value;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.Tag;
+
+/**
+ * Storage of a map value parsed from a compound tag, which decodes values of the tag only once they are read,
+ * so reading a few fields of a large tag doesn't convert all of it. Decoded values replace their tags,
+ * and can be modified like in any other map.
+ * <p>
+ * Tags are read after the map was created, so they must not be modified later on.
+ */
+final class NBTMapView extends AbstractMap<Value, Value>
+{
+    // decoded values, or tags that were not read yet
+    private final Map<Value, Object> entries;
+
+    NBTMapView(CompoundTag tag)
+    {
+        entries = new HashMap<>(tag.size());
+        for (String key : tag.keySet())
+        {
+            entries.put(new StringValue(key), tag.get(key));
+        }
+    }
+
+    private static Value decode(Map.Entry<Value, Object> entry)
+    {
+        if (entry.getValue() instanceof final Tag tag)
+        {
+            Value value = NBTSerializableValue.decodeTagLazy(tag);
+            entry.setValue(value);
+            return value;
+        }
+        return (Value) entry.getValue();
+    }
+
+    @Override
+    public int size()
+    {
+        return entries.size();
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return entries.containsKey(key);
+    }
+
+    @Override
+    public Value get(Object key)
+    {
+        Object stored = entries.get(key);
+        if (stored instanceof final Tag tag)
+        {
+            Value value = NBTSerializableValue.decodeTagLazy(tag);
+            // replaces the value of an existing key, so it doesn't change the structure of the map
+            entries.put((Value) key, value);
+            return value;
+        }
+        return (Value) stored;
+    }
+
+    @Override
+    public Value put(Value key, Value value)
+    {
+        Object previous = entries.put(key, value);
+        return previous instanceof final Tag tag ? NBTSerializableValue.decodeTagLazy(tag) : (Value) previous;
+    }
+
+    @Override
+    public Value remove(Object key)
+    {
+        Object previous = entries.remove(key);
+        return previous instanceof final Tag tag ? NBTSerializableValue.decodeTagLazy(tag) : (Value) previous;
+    }
+
+    @Override
+    public void clear()
+    {
+        entries.clear();
+    }
+
+    @Override
+    public Set<Value> keySet()
+    {
+        return entries.keySet();
+    }
+
+    @Override
+    public Set<Map.Entry<Value, Value>> entrySet()
+    {
+        return new AbstractSet<>()
+        {
+            @Override
+            public int size()
+            {
+                return entries.size();
+            }
+
+            @Override
+            public Iterator<Map.Entry<Value, Value>> iterator()
+            {
+                Iterator<Map.Entry<Value, Object>> stored = entries.entrySet().iterator();
+                return new Iterator<>()
+                {
+                    @Override
+                    public boolean hasNext()
+                    {
+                        return stored.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<Value, Value> next()
+                    {
+                        Map.Entry<Value, Object> entry = stored.next();
+                        return new LazyEntry(entry);
+                    }
+
+                    @Override
+                    public void remove()
+                    {
+                        stored.remove();
+                    }
+                };
+            }
+        };
+    }
+
+    private static final class LazyEntry implements Map.Entry<Value, Value>
+    {
+        private final Map.Entry<Value, Object> entry;
+
+        LazyEntry(Map.Entry<Value, Object> entry)
+        {
+            this.entry = entry;
+        }
+
+        @Override
+        public Value getKey()
+        {
+            return entry.getKey();
+        }
+
+        @Override
+        public Value getValue()
+        {
+            return decode(entry);
+        }
+
+        @Override
+        public Value setValue(Value value)
+        {
+            Value previous = decode(entry);
+            entry.setValue(value);
+            return previous;
+        }
+
+        @Override
+        public boolean equals(Object o)
+        {
+            return o instanceof final Map.Entry<?, ?> other && getKey().equals(other.getKey()) && getValue().equals(other.getValue());
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return getKey().hashCode() ^ getValue().hashCode();
+        }
+    }
+}
@@ -5,16 +5,17 @@ import carpet.script.exception.InternalExpressionException;
 import carpet.script.exception.ThrowStatement;
 import carpet.script.exception.Throwables;
 import carpet.script.external.Vanilla;
+import carpet.script.utils.BoundedCache;
 import carpet.script.utils.EquipmentInventory;
 import com.mojang.brigadier.StringReader;
 import com.mojang.brigadier.exceptions.CommandSyntaxException;
 
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.function.Supplier;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -63,7 +64,7 @@ public class NBTSerializableValue extends Value implements ContainerValueInterfa
     private String nbtString = null;
     private Tag nbtTag = null;
     private Supplier<Tag> nbtSupplier = null;
-    private boolean owned = false;
+    private Ownership ownership = new Ownership(false);
     private static TagParser<Tag> tagParser = TagParser.create(NbtOps.INSTANCE);
 
     private NBTSerializableValue()
@@ -83,13 +84,27 @@ public class NBTSerializableValue extends Value implements ContainerValueInterfa
                 throw new InternalExpressionException("Incorrect NBT data: " + nbtString);
             }
         };
-        owned = true;
+        ownership = new Ownership(true);
     }
 
     public NBTSerializableValue(Tag tag)
     {
         nbtTag = tag;
-        owned = true;
+        ownership = new Ownership(true);
+    }
+
+    /**
+     * Whether values sharing a tag, i.e. clones made when values are assigned to variables, can change that tag in place.
+     * Once the tag is handed to something that reads it later, each of them copies it on its next change instead.
+     */
+    private static final class Ownership
+    {
+        private volatile boolean owned;
+
+        private Ownership(boolean owned)
+        {
+            this.owned = owned;
+        }
     }
 
     public static Value of(Tag tag)
@@ -106,13 +121,37 @@ public class NBTSerializableValue extends Value implements ContainerValueInterfa
         nbtSupplier = tagSupplier;
     }
 
+    private record EncodedStack(ItemStack state, RegistryAccess regs, Tag tag)
+    {
+    }
+
+    // by stack instance, item stacks don't override equals
+    private static final Map<ItemStack, EncodedStack> encodedStacks = Collections.synchronizedMap(new WeakHashMap<>());
+
     public static Value fromStack(ItemStack stack, RegistryAccess regs)
     {
         NBTSerializableValue value = new NBTSerializableValue();
-        value.nbtSupplier = () -> ItemStack.CODEC.encodeStart(regs.createSerializationContext(NbtOps.INSTANCE), stack).getOrThrow();
+        value.nbtSupplier = () -> encodeStack(stack, regs);
         return value;
     }
 
+    /**
+     * Encodes the stack only when it changed since it was last encoded, so scanning the same inventories
+     * over and over doesn't encode all of their items each time. Values using the tag are not owning it,
+     * so they copy it before making any changes.
+     */
+    private static Tag encodeStack(ItemStack stack, RegistryAccess regs)
+    {
+        EncodedStack encoded = encodedStacks.get(stack);
+        if (encoded != null && encoded.regs() == regs && ItemStack.matches(encoded.state(), stack))
+        {
+            return encoded.tag();
+        }
+        Tag tag = ItemStack.CODEC.encodeStart(regs.createSerializationContext(NbtOps.INSTANCE), stack).getOrThrow();
+        encodedStacks.put(stack, new EncodedStack(stack.copy(), regs, tag));
+        return tag;
+    }
+
     public static Value nameFromRegistryId(@Nullable ResourceLocation id)
     {
         return StringValue.of(nameFromResource(id));
@@ -158,7 +197,7 @@ public class NBTSerializableValue extends Value implements ContainerValueInterfa
         NBTSerializableValue copy = new NBTSerializableValue(nbtTag);
         copy.nbtSupplier = this.nbtSupplier;
         copy.nbtString = this.nbtString;
-        copy.owned = this.owned;
+        copy.ownership = this.ownership;
         return copy;
     }
 
@@ -166,8 +205,9 @@ public class NBTSerializableValue extends Value implements ContainerValueInterfa
     public Value deepcopy()
     {
         NBTSerializableValue copy = (NBTSerializableValue) clone();
-        copy.owned = false;
-        ensureOwnership();
+        copy.ownership = new Ownership(false);
+        // the copy reads the same tag until it's changed, so nothing can change that tag in place anymore
+        ownership.owned = false;
         return copy;
     }
 
@@ -337,7 +377,7 @@ public class NBTSerializableValue extends Value implements ContainerValueInterfa
         }
     }
 
-    private static final Map<String, ItemInput> itemCache = new HashMap<>();
+    private static final BoundedCache<String, ItemInput> itemCache = BoundedCache.create("items", 64000);
 
     public static ItemStack parseItem(String itemString, RegistryAccess regs)
     {
@@ -360,10 +400,6 @@ public class NBTSerializableValue extends Value implements ContainerValueInterfa
             res = new ItemInput(parser.item(), parser.components());
 
             itemCache.put(itemString, res);
-            if (itemCache.size() > 64000)
-            {
-                itemCache.clear();
-            }
             return res.createItemStack(1, false);
         }
         catch (CommandSyntaxException e)
@@ -405,32 +441,29 @@ public class NBTSerializableValue extends Value implements ContainerValueInterfa
         return t instanceof CompoundTag || t instanceof CollectionTag ? new NBTSerializableValue(() -> t) : decodeSimpleTag(t);
     }
 
-    private static Value decodeTagDeep(Tag t)
+    /**
+     * Decodes compound and list tags into map and list values that decode their contents only once read
+     */
+    static Value decodeTagLazy(Tag t)
     {
         if (t instanceof final CompoundTag ctag)
         {
-            Map<Value, Value> pairs = new HashMap<>();
-            for (String key : ctag.keySet())
-            {
-                pairs.put(new StringValue(key), decodeTagDeep(ctag.get(key)));
-            }
-            return MapValue.wrap(pairs);
+            return MapValue.wrap(new NBTMapView(ctag));
         }
         if (t instanceof final CollectionTag ltag)
         {
-            List<Value> elems = new ArrayList<>();
-            for (Tag elem : ltag)
-            {
-                elems.add(decodeTagDeep(elem));
-            }
-            return ListValue.wrap(elems);
+            return ListValue.wrap(new NBTListView(ltag));
         }
         return decodeSimpleTag(t);
     }
 
     public Value toValue()
     {
-        return decodeTagDeep(this.getTag());
+        Value value = decodeTagLazy(getTag());
+        // the result keeps reading from the tag, so changes to this value, and to any of its aliases
+        // sharing the tag, need to go to their own copies of it
+        ownership.owned = false;
+        return value;
     }
 
     public static Value fromValue(Value v)
@@ -695,12 +728,12 @@ public class NBTSerializableValue extends Value implements ContainerValueInterfa
 
     private void ensureOwnership()
     {
-        if (!owned)
+        if (!ownership.owned)
         {
             nbtTag = getTag().copy();
             nbtString = null;
             nbtSupplier = null;  // just to be sure
-            owned = true;
+            ownership = new Ownership(true);
         }
     }
 
@@ -732,7 +765,7 @@ public class NBTSerializableValue extends Value implements ContainerValueInterfa
         }
     }
 
-    private static final Map<String, NbtPathArgument.NbtPath> pathCache = new HashMap<>();
+    private static final BoundedCache<String, NbtPathArgument.NbtPath> pathCache = BoundedCache.create("nbt_paths", 1024);
 
     private static NbtPathArgument.NbtPath cachePath(String arg)
     {
@@ -749,10 +782,6 @@ public class NBTSerializableValue extends Value implements ContainerValueInterfa
         {
             throw new InternalExpressionException("Incorrect nbt path: " + arg);
         }
-        if (pathCache.size() > 1024)
-        {
-            pathCache.clear();
-        }
         pathCache.put(arg, res);
         return res;
     }
@@ -127,6 +127,11 @@ public class NumericValue extends Value
         return longValue != null ? longValue : Long.valueOf(floor((value + epsilon)));
     }
 
+    public boolean hasLongValue()
+    {
+        return longValue != null;
+    }
+
     @Override
     public Value add(Value v)
     {  // TODO test if definintn add(NumericVlaue) woud solve the casting
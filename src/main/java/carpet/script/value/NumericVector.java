@@ -0,0 +1,371 @@
+package carpet.script.value;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.function.DoubleBinaryOperator;
+import java.util.function.LongBinaryOperator;
+
+import javax.annotation.Nullable;
+
+/**
+ * Backing storage of a {@link ListValue} that contains only numbers, kept in primitive arrays rather than as separate
+ * {@link NumericValue} objects. Numbers are materialized only when elements are read, and kept for later reads of the same
+ * element, and the list turns into a regular list of values the first time anything else than a plain number is stored in it.
+ */
+final class NumericVector extends AbstractList<Value> implements RandomAccess
+{
+    enum Operation
+    {
+        ADD(Long::sum, Double::sum),
+        SUBTRACT((a, b) -> a - b, (a, b) -> a - b),
+        MULTIPLY((a, b) -> a * b, (a, b) -> a * b),
+        DIVIDE(null, (a, b) -> a / b);
+
+        @Nullable
+        private final LongBinaryOperator longOp;
+        private final DoubleBinaryOperator doubleOp;
+
+        Operation(@Nullable LongBinaryOperator longOp, DoubleBinaryOperator doubleOp)
+        {
+            this.longOp = longOp;
+            this.doubleOp = doubleOp;
+        }
+    }
+
+    // long values, or raw bits of double values
+    private long[] bits;
+    private boolean[] longValued;
+    // numbers already materialized by reads, allocated on the first read
+    @Nullable
+    private NumericValue[] boxed;
+    private int size;
+    @Nullable
+    private List<Value> generic;
+
+    NumericVector(int capacity)
+    {
+        bits = new long[capacity];
+        longValued = new boolean[capacity];
+    }
+
+    static NumericVector ofDoubles(double... values)
+    {
+        NumericVector vector = new NumericVector(values.length);
+        for (double value : values)
+        {
+            vector.addDouble(value);
+        }
+        return vector;
+    }
+
+    static NumericVector ofLongs(long... values)
+    {
+        NumericVector vector = new NumericVector(values.length);
+        for (long value : values)
+        {
+            vector.addLong(value);
+        }
+        return vector;
+    }
+
+    /**
+     * Applies the operation element-wise, following the same rules as {@link NumericValue} arithmetic
+     *
+     * @return result vector, or null if any of the elements is not a number, so the operation needs to be done generically
+     */
+    @Nullable
+    static NumericVector combine(List<Value> left, List<Value> right, Operation op)
+    {
+        int size = left.size();
+        NumericVector result = new NumericVector(size);
+        NumericVector packedLeft = left instanceof NumericVector nv && nv.generic == null ? nv : null;
+        NumericVector packedRight = right instanceof NumericVector nv && nv.generic == null ? nv : null;
+        for (int i = 0; i < size; i++)
+        {
+            boolean leftLong;
+            long leftBits;
+            if (packedLeft != null)
+            {
+                leftLong = packedLeft.longValued[i];
+                leftBits = packedLeft.bits[i];
+            }
+            else if (left.get(i) instanceof NumericValue number && isPlainNumber(number))
+            {
+                leftLong = number.hasLongValue();
+                leftBits = leftLong ? number.getLong() : Double.doubleToRawLongBits(number.getDouble());
+            }
+            else
+            {
+                return null;
+            }
+            boolean rightLong;
+            long rightBits;
+            if (packedRight != null)
+            {
+                rightLong = packedRight.longValued[i];
+                rightBits = packedRight.bits[i];
+            }
+            else if (right.get(i) instanceof NumericValue number && isPlainNumber(number))
+            {
+                rightLong = number.hasLongValue();
+                rightBits = rightLong ? number.getLong() : Double.doubleToRawLongBits(number.getDouble());
+            }
+            else
+            {
+                return null;
+            }
+            result.apply(op, leftLong, leftBits, rightLong, rightBits);
+        }
+        return result;
+    }
+
+    /**
+     * Applies the operation to each element with a number as the right hand side operand
+     *
+     * @return result vector, or null if any of the elements is not a number
+     */
+    @Nullable
+    static NumericVector combine(List<Value> left, NumericValue right, Operation op)
+    {
+        int size = left.size();
+        NumericVector result = new NumericVector(size);
+        NumericVector packedLeft = left instanceof NumericVector nv && nv.generic == null ? nv : null;
+        boolean rightLong = right.hasLongValue();
+        long rightBits = rightLong ? right.getLong() : Double.doubleToRawLongBits(right.getDouble());
+        for (int i = 0; i < size; i++)
+        {
+            if (packedLeft != null)
+            {
+                result.apply(op, packedLeft.longValued[i], packedLeft.bits[i], rightLong, rightBits);
+            }
+            else if (left.get(i) instanceof NumericValue number && isPlainNumber(number))
+            {
+                boolean leftLong = number.hasLongValue();
+                result.apply(op, leftLong, leftLong ? number.getLong() : Double.doubleToRawLongBits(number.getDouble()), rightLong, rightBits);
+            }
+            else
+            {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    private void apply(Operation op, boolean leftLong, long leftBits, boolean rightLong, long rightBits)
+    {
+        if (leftLong && rightLong && op.longOp != null)
+        {
+            addLong(op.longOp.applyAsLong(leftBits, rightBits));
+            return;
+        }
+        double left = leftLong ? (double) leftBits : Double.longBitsToDouble(leftBits);
+        double right = rightLong ? (double) rightBits : Double.longBitsToDouble(rightBits);
+        addDouble(op.doubleOp.applyAsDouble(left, right));
+    }
+
+    /**
+     * Only plain numbers follow {@link NumericValue} arithmetic, {@code null} and booleans have their own rules
+     */
+    static boolean isPlainNumber(Value value)
+    {
+        return value.getClass() == NumericValue.class;
+    }
+
+    private static boolean isPackable(@Nullable Value value)
+    {
+        // bound values need to stay as they are
+        return value != null && isPlainNumber(value) && value.boundVariable == null;
+    }
+
+    NumericVector deepcopy()
+    {
+        if (generic != null)
+        {
+            NumericVector copy = new NumericVector(0);
+            List<Value> items = new ArrayList<>(generic.size());
+            for (Value item : generic)
+            {
+                items.add(item.deepcopy());
+            }
+            copy.generic = items;
+            return copy;
+        }
+        NumericVector copy = new NumericVector(0);
+        copy.bits = Arrays.copyOf(bits, size);
+        copy.longValued = Arrays.copyOf(longValued, size);
+        copy.size = size;
+        return copy;
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity > bits.length)
+        {
+            int newCapacity = Math.max(capacity, bits.length + (bits.length >> 1) + 1);
+            bits = Arrays.copyOf(bits, newCapacity);
+            longValued = Arrays.copyOf(longValued, newCapacity);
+            if (boxed != null)
+            {
+                boxed = Arrays.copyOf(boxed, newCapacity);
+            }
+        }
+    }
+
+    private void addLong(long value)
+    {
+        ensureCapacity(size + 1);
+        if (boxed != null)
+        {
+            boxed[size] = null;
+        }
+        bits[size] = value;
+        longValued[size] = true;
+        size++;
+    }
+
+    private void addDouble(double value)
+    {
+        ensureCapacity(size + 1);
+        if (boxed != null)
+        {
+            boxed[size] = null;
+        }
+        bits[size] = Double.doubleToRawLongBits(value);
+        longValued[size] = false;
+        size++;
+    }
+
+    private void store(int index, NumericValue value)
+    {
+        if (boxed != null)
+        {
+            boxed[index] = null;
+        }
+        boolean isLong = value.hasLongValue();
+        longValued[index] = isLong;
+        bits[index] = isLong ? value.getLong() : Double.doubleToRawLongBits(value.getDouble());
+    }
+
+    private List<Value> inflate()
+    {
+        if (generic == null)
+        {
+            List<Value> values = new ArrayList<>(Math.max(size, 10));
+            for (int i = 0; i < size; i++)
+            {
+                values.add(get(i));
+            }
+            generic = values;
+            bits = null;
+            longValued = null;
+            boxed = null;
+            size = 0;
+        }
+        return generic;
+    }
+
+    @Override
+    public Value get(int index)
+    {
+        if (generic != null)
+        {
+            return generic.get(index);
+        }
+        if (index < 0 || index >= size)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        if (boxed == null)
+        {
+            boxed = new NumericValue[bits.length];
+        }
+        NumericValue value = boxed[index];
+        if (value == null)
+        {
+            value = longValued[index] ? new NumericValue(bits[index]) : new NumericValue(Double.longBitsToDouble(bits[index]));
+            boxed[index] = value;
+        }
+        return value;
+    }
+
+    @Override
+    public Value set(int index, Value element)
+    {
+        if (generic == null && isPackable(element))
+        {
+            Value previous = get(index);
+            store(index, (NumericValue) element);
+            return previous;
+        }
+        return inflate().set(index, element);
+    }
+
+    @Override
+    public void add(int index, Value element)
+    {
+        modCount++;
+        if (generic == null && isPackable(element))
+        {
+            if (index < 0 || index > size)
+            {
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+            }
+            ensureCapacity(size + 1);
+            System.arraycopy(bits, index, bits, index + 1, size - index);
+            System.arraycopy(longValued, index, longValued, index + 1, size - index);
+            if (boxed != null)
+            {
+                System.arraycopy(boxed, index, boxed, index + 1, size - index);
+            }
+            store(index, (NumericValue) element);
+            size++;
+            return;
+        }
+        inflate().add(index, element);
+    }
+
+    @Override
+    public Value remove(int index)
+    {
+        modCount++;
+        if (generic != null)
+        {
+            return generic.remove(index);
+        }
+        Value previous = get(index);
+        System.arraycopy(bits, index + 1, bits, index, size - index - 1);
+        System.arraycopy(longValued, index + 1, longValued, index, size - index - 1);
+        if (boxed != null)
+        {
+            System.arraycopy(boxed, index + 1, boxed, index, size - index - 1);
+            boxed[size - 1] = null;
+        }
+        size--;
+        return previous;
+    }
+
+    @Override
+    public void clear()
+    {
+        modCount++;
+        if (generic != null)
+        {
+            generic.clear();
+            return;
+        }
+        if (boxed != null)
+        {
+            Arrays.fill(boxed, 0, size, null);
+        }
+        size = 0;
+    }
+
+    @Override
+    public int size()
+    {
+        return generic != null ? generic.size() : size;
+    }
+}
@@ -0,0 +1,86 @@
+package carpet.script.value;
+
+import carpet.script.utils.BoundedCache;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled regular expressions used by matching, replacing and splitting strings, so code doing these in a loop
+ * doesn't compile the same pattern each time. Least recently used patterns are dropped once the cache is full.
+ * Patterns given as string literals in optimized code are compiled once, when the code is loaded, and kept
+ * with the literal itself.
+ */
+public final class PatternCache
+{
+    private static final BoundedCache<String, Pattern> patterns = BoundedCache.create("regex", 256);
+    // uses of patterns compiled with their literals, which don't go through the cache
+    private static final LongAdder precompiledHits = new LongAdder();
+
+    private PatternCache()
+    {
+    }
+
+    public static Pattern get(Value regex) throws PatternSyntaxException
+    {
+        if (regex instanceof final StringValue string && string.pattern != null)
+        {
+            precompiledHits.increment();
+            return string.pattern;
+        }
+        return get(regex.getString());
+    }
+
+    public static Pattern get(String regex) throws PatternSyntaxException
+    {
+        Pattern pattern = patterns.get(regex);
+        if (pattern != null)
+        {
+            return pattern;
+        }
+        // compiled outside of the lock, so threads compiling long patterns don't hold up others
+        pattern = Pattern.compile(regex);
+        patterns.put(regex, pattern);
+        return pattern;
+    }
+
+    /**
+     * Compiles the pattern of a string literal ahead of time. Invalid patterns are left for the code using them
+     * to report, when it runs.
+     */
+    public static void precompile(Value literal)
+    {
+        if (literal.getClass() == StringValue.class && ((StringValue) literal).pattern == null)
+        {
+            try
+            {
+                ((StringValue) literal).pattern = Pattern.compile(literal.getString());
+            }
+            catch (PatternSyntaxException ignored)
+            {
+            }
+        }
+    }
+
+    /**
+     * @return number of uses of patterns that were already compiled
+     */
+    public static long hits()
+    {
+        return patterns.hits() + precompiledHits.sum();
+    }
+
+    /**
+     * @return number of patterns that needed to be compiled
+     */
+    public static long misses()
+    {
+        return patterns.misses();
+    }
+
+    public static int size()
+    {
+        return patterns.size();
+    }
+}
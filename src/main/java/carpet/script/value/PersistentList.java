@@ -0,0 +1,418 @@
+package carpet.script.value;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.function.Predicate;
+
+import javax.annotation.Nullable;
+
+/**
+ * Default storage of list values, a 32-way trie that can be copied in constant time.
+ * <p>
+ * Copies share all their nodes with the original. Each list owns the nodes it created since the last copy
+ * was taken, and modifies those in place, while any shared node is copied, together with the path leading to it,
+ * on the first write, so a modification after a copy costs log32(n) rather than n.
+ * <p>
+ * Lists of up to 32 elements are kept in a single flat array instead, which is copied as a whole on the first write
+ * after the list was copied, so small lists don't pay for the trie.
+ */
+final class PersistentList extends AbstractList<Value> implements RandomAccess
+{
+    private static final int BITS = 5;
+    private static final int WIDTH = 1 << BITS;
+    private static final int MASK = WIDTH - 1;
+    private static final Object[] EMPTY = new Object[0];
+
+    private static final class Node
+    {
+        final Object owner;
+        final Object[] array;
+
+        Node(Object owner, Object[] array)
+        {
+            this.owner = owner;
+            this.array = array;
+        }
+    }
+
+    // elements of the list while it has at most WIDTH of them, null once the list uses the trie
+    @Nullable
+    private Object[] flat = EMPTY;
+    // whether the flat array is shared with copies of the list
+    private boolean flatShared = false;
+    // created on the first write to the trie after the list was copied
+    @Nullable
+    private Object owner;
+    @Nullable
+    private Node root;
+    private int shift = 0;
+    private int size = 0;
+    // number of elements that need to be copied when copying the list
+    private int containers = 0;
+    // iterators that read the current elements, and which elements they read
+    private int iterators = 0;
+    private int generation = 0;
+
+    PersistentList()
+    {
+    }
+
+    PersistentList(Collection<? extends Value> values)
+    {
+        if (values.size() <= WIDTH)
+        {
+            flat = values.toArray();
+            size = flat.length;
+            for (Object value : flat)
+            {
+                if (isMutable((Value) value))
+                {
+                    containers++;
+                }
+            }
+            return;
+        }
+        for (Value value : values)
+        {
+            push(value);
+        }
+    }
+
+    private PersistentList(PersistentList other)
+    {
+        flat = other.flat;
+        flatShared = true;
+        root = other.root;
+        shift = other.shift;
+        size = other.size;
+        containers = other.containers;
+    }
+
+    /**
+     * Values that are mutable on their own and need to be copied when their container is copied
+     */
+    static boolean isMutable(Value value)
+    {
+        return value instanceof ContainerValueInterface || value instanceof AbstractListValue;
+    }
+
+    /**
+     * @return a copy of that list sharing all elements with the original
+     */
+    PersistentList fork()
+    {
+        PersistentList copy = new PersistentList(this);
+        share();
+        return copy;
+    }
+
+    /**
+     * @return a copy of that list with all mutable elements copied as well, which takes constant time
+     * for lists that do not contain other containers
+     */
+    PersistentList deepcopy()
+    {
+        PersistentList copy = fork();
+        if (containers > 0)
+        {
+            for (int i = 0; i < size; i++)
+            {
+                Value value = valueAt(i);
+                if (isMutable(value))
+                {
+                    copy.editableLeaf(i)[i & MASK] = value.deepcopy();
+                }
+            }
+        }
+        return copy;
+    }
+
+    // from now on this list can't modify any of its current arrays in place
+    private void share()
+    {
+        flatShared = true;
+        owner = null;
+        iterators = 0;
+        generation++;
+    }
+
+    private void beforeWrite()
+    {
+        if (iterators > 0)
+        {
+            share();
+        }
+    }
+
+    private Object owner()
+    {
+        if (owner == null)
+        {
+            owner = new Object();
+        }
+        return owner;
+    }
+
+    private Node editable(Node node)
+    {
+        return node.owner == owner() ? node : new Node(owner, node.array.clone());
+    }
+
+    private Object[] editableLeaf(int index)
+    {
+        beforeWrite();
+        if (root == null)
+        {
+            if (flatShared)
+            {
+                flat = flat.clone();
+                flatShared = false;
+            }
+            return flat;
+        }
+        root = editable(root);
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS)
+        {
+            int slot = (index >>> level) & MASK;
+            Node child = (Node) node.array[slot];
+            child = child == null ? new Node(owner, new Object[WIDTH]) : editable(child);
+            node.array[slot] = child;
+            node = child;
+        }
+        return node.array;
+    }
+
+    private Value valueAt(int index)
+    {
+        if (root == null)
+        {
+            return (Value) flat[index];
+        }
+        Node node = root;
+        for (int level = shift; level > 0; level -= BITS)
+        {
+            node = (Node) node.array[(index >>> level) & MASK];
+        }
+        return (Value) node.array[index & MASK];
+    }
+
+    private void push(Value value)
+    {
+        beforeWrite();
+        if (root == null && size == flat.length)
+        {
+            if (size < WIDTH)
+            {
+                flat = Arrays.copyOf(flat, Math.min(Math.max(4, size * 2), WIDTH));
+                flatShared = false;
+            }
+            else
+            {
+                // moving to the trie, the flat array becomes its first leaf
+                root = new Node(owner(), flatShared ? flat.clone() : flat);
+                flat = null;
+            }
+        }
+        if (root != null && size == 1 << (shift + BITS))
+        {
+            Object[] array = new Object[WIDTH];
+            array[0] = root;
+            root = new Node(owner(), array);
+            shift += BITS;
+        }
+        editableLeaf(size)[size & MASK] = value;
+        size++;
+        if (isMutable(value))
+        {
+            containers++;
+        }
+    }
+
+    private Value pop()
+    {
+        Object[] leaf = editableLeaf(size - 1);
+        Value last = (Value) leaf[(size - 1) & MASK];
+        leaf[(size - 1) & MASK] = null;
+        size--;
+        if (isMutable(last))
+        {
+            containers--;
+        }
+        return last;
+    }
+
+    private Value replace(int index, Value value)
+    {
+        Object[] leaf = editableLeaf(index);
+        Value previous = (Value) leaf[index & MASK];
+        leaf[index & MASK] = value;
+        if (isMutable(previous))
+        {
+            containers--;
+        }
+        if (isMutable(value))
+        {
+            containers++;
+        }
+        return previous;
+    }
+
+    /**
+     * Iterates over the elements the list had when the iterator was created, without copying them.
+     * The list only stops modifying its arrays in place if it is written to while such iterators are in use.
+     */
+    @Override
+    public Iterator<Value> iterator()
+    {
+        iterators++;
+        int iterated = generation;
+        int length = size;
+        Object[] elements = flat;
+        Node trie = root;
+        int levels = shift;
+        return new Iterator<>()
+        {
+            private int index = 0;
+            private Object[] leaf = elements;
+            private boolean done = false;
+
+            @Override
+            public boolean hasNext()
+            {
+                if (index < length)
+                {
+                    return true;
+                }
+                if (!done && generation == iterated)
+                {
+                    iterators--;
+                }
+                done = true;
+                return false;
+            }
+
+            @Override
+            public Value next()
+            {
+                if (index >= length)
+                {
+                    throw new NoSuchElementException();
+                }
+                if (trie != null && (index & MASK) == 0)
+                {
+                    Node node = trie;
+                    for (int level = levels; level > 0; level -= BITS)
+                    {
+                        node = (Node) node.array[(index >>> level) & MASK];
+                    }
+                    leaf = node.array;
+                }
+                return (Value) leaf[index++ & MASK];
+            }
+        };
+    }
+
+    private void checkIndex(int index, int bound)
+    {
+        if (index < 0 || index >= bound)
+        {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+    }
+
+    @Override
+    public Value get(int index)
+    {
+        checkIndex(index, size);
+        return valueAt(index);
+    }
+
+    @Override
+    public Value set(int index, Value element)
+    {
+        checkIndex(index, size);
+        return replace(index, element);
+    }
+
+    @Override
+    public void add(int index, Value element)
+    {
+        checkIndex(index, size + 1);
+        modCount++;
+        if (index == size)
+        {
+            push(element);
+            return;
+        }
+        push(valueAt(size - 1));
+        for (int i = size - 2; i > index; i--)
+        {
+            replace(i, valueAt(i - 1));
+        }
+        replace(index, element);
+    }
+
+    @Override
+    public Value remove(int index)
+    {
+        checkIndex(index, size);
+        modCount++;
+        if (index == size - 1)
+        {
+            return pop();
+        }
+        Value removed = valueAt(index);
+        for (int i = index; i < size - 1; i++)
+        {
+            replace(i, valueAt(i + 1));
+        }
+        pop();
+        return removed;
+    }
+
+    @Override
+    public boolean removeIf(Predicate<? super Value> filter)
+    {
+        List<Value> kept = new ArrayList<>(size);
+        for (int i = 0; i < size; i++)
+        {
+            Value value = valueAt(i);
+            if (!filter.test(value))
+            {
+                kept.add(value);
+            }
+        }
+        if (kept.size() == size)
+        {
+            return false;
+        }
+        clear();
+        kept.forEach(this::push);
+        return true;
+    }
+
+    @Override
+    public void clear()
+    {
+        modCount++;
+        share();
+        flat = EMPTY;
+        root = null;
+        shift = 0;
+        size = 0;
+        containers = 0;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+}
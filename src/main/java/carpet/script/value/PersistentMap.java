@@ -0,0 +1,683 @@
+package carpet.script.value;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import javax.annotation.Nullable;
+
+/**
+ * Default storage of map values, a hash array mapped trie that can be copied in constant time.
+ * <p>
+ * Follows the same ownership rules as {@link PersistentList}: nodes created since the last copy are modified
+ * in place, shared nodes are copied along with their path on the first write. Small maps are a single node
+ * holding all of their keys and values, and their views iterate the trie directly, without copying the entries.
+ */
+final class PersistentMap extends AbstractMap<Value, Value>
+{
+    private static final int BITS = 5;
+    private static final int MASK = (1 << BITS) - 1;
+    private static final Object NOT_FOUND = new Object();
+
+    private static final class Change
+    {
+        Object previous = NOT_FOUND;
+    }
+
+    private abstract static class Node
+    {
+        final Object owner;
+
+        Node(Object owner)
+        {
+            this.owner = owner;
+        }
+
+        abstract Object find(int shift, int hash, Object key);
+
+        abstract Node put(Object owner, int shift, int hash, Value key, Value value, Change change);
+
+        // returns null once the node becomes empty
+        abstract Node remove(Object owner, int shift, int hash, Object key, Change change);
+
+        abstract void forEach(BiConsumer<? super Value, ? super Value> action);
+
+        // keys and values, with null keys followed by sub nodes
+        abstract Object[] entries();
+    }
+
+    private static final class BitmapNode extends Node
+    {
+        static final BitmapNode EMPTY = new BitmapNode(null, 0, new Object[0]);
+
+        int bitmap;
+        // key and value for each set bit, or null and a sub node
+        Object[] array;
+
+        BitmapNode(Object owner, int bitmap, Object[] array)
+        {
+            super(owner);
+            this.bitmap = bitmap;
+            this.array = array;
+        }
+
+        private BitmapNode editable(Object owner)
+        {
+            return this.owner == owner ? this : new BitmapNode(owner, bitmap, array.clone());
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key)
+        {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0)
+            {
+                return NOT_FOUND;
+            }
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object storedKey = array[index];
+            if (storedKey == null)
+            {
+                return ((Node) array[index + 1]).find(shift + BITS, hash, key);
+            }
+            return Objects.equals(key, storedKey) ? array[index + 1] : NOT_FOUND;
+        }
+
+        @Override
+        Node put(Object owner, int shift, int hash, Value key, Value value, Change change)
+        {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            if ((bitmap & bit) == 0)
+            {
+                Object[] newArray = new Object[array.length + 2];
+                System.arraycopy(array, 0, newArray, 0, index);
+                newArray[index] = key;
+                newArray[index + 1] = value;
+                System.arraycopy(array, index, newArray, index + 2, array.length - index);
+                BitmapNode node = this.owner == owner ? this : new BitmapNode(owner, 0, null);
+                node.bitmap = bitmap | bit;
+                node.array = newArray;
+                return node;
+            }
+            Object storedKey = array[index];
+            Object storedValue = array[index + 1];
+            if (storedKey == null)
+            {
+                Node child = ((Node) storedValue).put(owner, shift + BITS, hash, key, value, change);
+                if (child == storedValue)
+                {
+                    return this;
+                }
+                BitmapNode node = editable(owner);
+                node.array[index + 1] = child;
+                return node;
+            }
+            if (Objects.equals(key, storedKey))
+            {
+                change.previous = storedValue;
+                if (storedValue == value)
+                {
+                    return this;
+                }
+                BitmapNode node = editable(owner);
+                node.array[index + 1] = value;
+                return node;
+            }
+            Node child = pair(owner, shift + BITS, (Value) storedKey, (Value) storedValue, hash, key, value);
+            BitmapNode node = editable(owner);
+            node.array[index] = null;
+            node.array[index + 1] = child;
+            return node;
+        }
+
+        @Override
+        Node remove(Object owner, int shift, int hash, Object key, Change change)
+        {
+            int bit = 1 << ((hash >>> shift) & MASK);
+            if ((bitmap & bit) == 0)
+            {
+                return this;
+            }
+            int index = 2 * Integer.bitCount(bitmap & (bit - 1));
+            Object storedKey = array[index];
+            Object storedValue = array[index + 1];
+            if (storedKey == null)
+            {
+                Node child = ((Node) storedValue).remove(owner, shift + BITS, hash, key, change);
+                if (child == storedValue)
+                {
+                    return this;
+                }
+                if (child != null)
+                {
+                    BitmapNode node = editable(owner);
+                    node.array[index + 1] = child;
+                    return node;
+                }
+            }
+            else if (Objects.equals(key, storedKey))
+            {
+                change.previous = storedValue;
+            }
+            else
+            {
+                return this;
+            }
+            if (bitmap == bit)
+            {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, index);
+            System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+            BitmapNode node = this.owner == owner ? this : new BitmapNode(owner, 0, null);
+            node.bitmap = bitmap ^ bit;
+            node.array = newArray;
+            return node;
+        }
+
+        @Override
+        Object[] entries()
+        {
+            return array;
+        }
+
+        @Override
+        void forEach(BiConsumer<? super Value, ? super Value> action)
+        {
+            for (int i = 0; i < array.length; i += 2)
+            {
+                if (array[i] == null)
+                {
+                    ((Node) array[i + 1]).forEach(action);
+                }
+                else
+                {
+                    action.accept((Value) array[i], (Value) array[i + 1]);
+                }
+            }
+        }
+    }
+
+    private static final class CollisionNode extends Node
+    {
+        final int hash;
+        // keys and values of entries with the same hash
+        Object[] array;
+
+        CollisionNode(Object owner, int hash, Object[] array)
+        {
+            super(owner);
+            this.hash = hash;
+            this.array = array;
+        }
+
+        private int indexOf(Object key)
+        {
+            for (int i = 0; i < array.length; i += 2)
+            {
+                if (Objects.equals(key, array[i]))
+                {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        Object find(int shift, int hash, Object key)
+        {
+            if (hash != this.hash)
+            {
+                return NOT_FOUND;
+            }
+            int index = indexOf(key);
+            return index < 0 ? NOT_FOUND : array[index + 1];
+        }
+
+        @Override
+        Node put(Object owner, int shift, int hash, Value key, Value value, Change change)
+        {
+            if (hash != this.hash)
+            {
+                BitmapNode parent = new BitmapNode(owner, 1 << ((this.hash >>> shift) & MASK), new Object[]{null, this});
+                return parent.put(owner, shift, hash, key, value, change);
+            }
+            int index = indexOf(key);
+            if (index >= 0)
+            {
+                change.previous = array[index + 1];
+                if (array[index + 1] == value)
+                {
+                    return this;
+                }
+                CollisionNode node = this.owner == owner ? this : new CollisionNode(owner, hash, array.clone());
+                node.array[index + 1] = value;
+                return node;
+            }
+            Object[] newArray = new Object[array.length + 2];
+            System.arraycopy(array, 0, newArray, 0, array.length);
+            newArray[array.length] = key;
+            newArray[array.length + 1] = value;
+            if (this.owner == owner)
+            {
+                array = newArray;
+                return this;
+            }
+            return new CollisionNode(owner, hash, newArray);
+        }
+
+        @Override
+        Node remove(Object owner, int shift, int hash, Object key, Change change)
+        {
+            int index = hash == this.hash ? indexOf(key) : -1;
+            if (index < 0)
+            {
+                return this;
+            }
+            change.previous = array[index + 1];
+            if (array.length == 2)
+            {
+                return null;
+            }
+            Object[] newArray = new Object[array.length - 2];
+            System.arraycopy(array, 0, newArray, 0, index);
+            System.arraycopy(array, index + 2, newArray, index, array.length - index - 2);
+            if (this.owner == owner)
+            {
+                array = newArray;
+                return this;
+            }
+            return new CollisionNode(owner, hash, newArray);
+        }
+
+        @Override
+        Object[] entries()
+        {
+            return array;
+        }
+
+        @Override
+        void forEach(BiConsumer<? super Value, ? super Value> action)
+        {
+            for (int i = 0; i < array.length; i += 2)
+            {
+                action.accept((Value) array[i], (Value) array[i + 1]);
+            }
+        }
+    }
+
+    private static Node pair(Object owner, int shift, Value key1, Value value1, int hash2, Value key2, Value value2)
+    {
+        int hash1 = hash(key1);
+        if (hash1 == hash2)
+        {
+            return new CollisionNode(owner, hash1, new Object[]{key1, value1, key2, value2});
+        }
+        Change change = new Change();
+        return BitmapNode.EMPTY
+                .put(owner, shift, hash1, key1, value1, change)
+                .put(owner, shift, hash2, key2, value2, change);
+    }
+
+    private static int hash(Object key)
+    {
+        int h = Objects.hashCode(key);
+        return h ^ (h >>> 16);
+    }
+
+    // created on the first write after the map was copied
+    @Nullable
+    private Object owner;
+    private Node root = BitmapNode.EMPTY;
+    private int size = 0;
+    // number of keys and values that need to be copied when copying the map
+    private int containers = 0;
+    // iterators that read the current nodes, and which nodes they read
+    private int iterators = 0;
+    private int generation = 0;
+
+    PersistentMap()
+    {
+    }
+
+    PersistentMap(Map<? extends Value, ? extends Value> other)
+    {
+        putAll(other);
+    }
+
+    /**
+     * @return a copy of that map sharing all keys and values with the original
+     */
+    PersistentMap fork()
+    {
+        PersistentMap copy = new PersistentMap();
+        copy.root = root;
+        copy.size = size;
+        copy.containers = containers;
+        share();
+        return copy;
+    }
+
+    /**
+     * @return a copy of that map with all mutable keys and values copied as well, which takes constant time
+     * for maps that do not contain other containers
+     */
+    PersistentMap deepcopy()
+    {
+        PersistentMap copy = fork();
+        if (containers > 0)
+        {
+            root.forEach((key, value) ->
+            {
+                if (PersistentList.isMutable(key))
+                {
+                    copy.remove(key);
+                    copy.put(key.deepcopy(), value.deepcopy());
+                }
+                else if (PersistentList.isMutable(value))
+                {
+                    copy.put(key, value.deepcopy());
+                }
+            });
+        }
+        return copy;
+    }
+
+    // from now on this map can't modify any of its current nodes in place
+    private void share()
+    {
+        owner = null;
+        iterators = 0;
+        generation++;
+    }
+
+    private Object owner()
+    {
+        if (iterators > 0)
+        {
+            share();
+        }
+        if (owner == null)
+        {
+            owner = new Object();
+        }
+        return owner;
+    }
+
+    private static int mutableCount(Object key, Object value)
+    {
+        return (key instanceof Value k && PersistentList.isMutable(k) ? 1 : 0) + (value instanceof Value v && PersistentList.isMutable(v) ? 1 : 0);
+    }
+
+    @Override
+    public Value get(Object key)
+    {
+        Object value = root.find(0, hash(key), key);
+        return value == NOT_FOUND ? null : (Value) value;
+    }
+
+    @Override
+    public boolean containsKey(Object key)
+    {
+        return root.find(0, hash(key), key) != NOT_FOUND;
+    }
+
+    @Override
+    public Value put(Value key, Value value)
+    {
+        Change change = new Change();
+        root = root.put(owner(), 0, hash(key), key, value, change);
+        if (change.previous == NOT_FOUND)
+        {
+            size++;
+            containers += mutableCount(key, value);
+            return null;
+        }
+        containers += mutableCount(null, value) - mutableCount(null, change.previous);
+        return (Value) change.previous;
+    }
+
+    @Override
+    public Value remove(Object key)
+    {
+        Change change = new Change();
+        Node newRoot = root.remove(owner(), 0, hash(key), key, change);
+        if (change.previous == NOT_FOUND)
+        {
+            return null;
+        }
+        root = newRoot == null ? BitmapNode.EMPTY : newRoot;
+        size--;
+        containers -= mutableCount(key, change.previous);
+        return (Value) change.previous;
+    }
+
+    @Override
+    public void clear()
+    {
+        share();
+        root = BitmapNode.EMPTY;
+        size = 0;
+        containers = 0;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super Value, ? super Value> action)
+    {
+        root.forEach(action);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int[] hash = {0};
+        root.forEach((key, value) -> hash[0] += Objects.hashCode(key) ^ Objects.hashCode(value));
+        return hash[0];
+    }
+
+    @Override
+    public Set<Entry<Value, Value>> entrySet()
+    {
+        return new AbstractSet<>()
+        {
+            @Override
+            public Iterator<Entry<Value, Value>> iterator()
+            {
+                return new TrieIterator<>()
+                {
+                    @Override
+                    Entry<Value, Value> element(Value key, Value value)
+                    {
+                        return new SimpleEntry<>(key, value)
+                        {
+                            @Override
+                            public Value setValue(Value newValue)
+                            {
+                                PersistentMap.this.put(key, newValue);
+                                return super.setValue(newValue);
+                            }
+                        };
+                    }
+                };
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Set<Value> keySet()
+    {
+        return new AbstractSet<>()
+        {
+            @Override
+            public Iterator<Value> iterator()
+            {
+                return new TrieIterator<>()
+                {
+                    @Override
+                    Value element(Value key, Value value)
+                    {
+                        return key;
+                    }
+                };
+            }
+
+            @Override
+            public boolean contains(Object key)
+            {
+                return containsKey(key);
+            }
+
+            @Override
+            public boolean remove(Object key)
+            {
+                return PersistentMap.this.remove(key) != null;
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Collection<Value> values()
+    {
+        return new AbstractCollection<>()
+        {
+            @Override
+            public Iterator<Value> iterator()
+            {
+                return new TrieIterator<>()
+                {
+                    @Override
+                    Value element(Value key, Value value)
+                    {
+                        return value;
+                    }
+                };
+            }
+
+            @Override
+            public int size()
+            {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Iterates over the nodes the map had when the iterator was created, without copying them. The map only stops
+     * modifying its nodes in place if it is written to while such iterators are in use, and changes made since then,
+     * including ones made through the iterator, are not visible to it.
+     */
+    private abstract class TrieIterator<T> implements Iterator<T>
+    {
+        private final int iterated = generation;
+        // arrays of nodes on the path to the next entry, and positions of the entries that follow in them,
+        // at most one level for each 5 bits of the hash, and a level of collision nodes
+        private final Object[][] path = new Object[8][];
+        private final int[] positions = new int[8];
+        private int depth = 0;
+        @Nullable
+        private Object[] next;
+        private int nextIndex;
+        @Nullable
+        private Value last;
+        private boolean done = false;
+
+        TrieIterator()
+        {
+            iterators++;
+            path[depth++] = root.entries();
+            advance();
+        }
+
+        abstract T element(Value key, Value value);
+
+        private void advance()
+        {
+            while (depth > 0)
+            {
+                Object[] array = path[depth - 1];
+                int index = positions[depth - 1];
+                if (index >= array.length)
+                {
+                    positions[--depth] = 0;
+                    continue;
+                }
+                positions[depth - 1] = index + 2;
+                if (array[index] == null)
+                {
+                    path[depth++] = ((Node) array[index + 1]).entries();
+                    continue;
+                }
+                next = array;
+                nextIndex = index;
+                return;
+            }
+            next = null;
+        }
+
+        @Override
+        public boolean hasNext()
+        {
+            if (next != null)
+            {
+                return true;
+            }
+            if (!done && generation == iterated)
+            {
+                iterators--;
+            }
+            done = true;
+            return false;
+        }
+
+        @Override
+        public T next()
+        {
+            if (next == null)
+            {
+                throw new NoSuchElementException();
+            }
+            last = (Value) next[nextIndex];
+            T element = element(last, (Value) next[nextIndex + 1]);
+            advance();
+            return element;
+        }
+
+        @Override
+        public void remove()
+        {
+            if (last == null)
+            {
+                throw new IllegalStateException();
+            }
+            PersistentMap.this.remove(last);
+            last = null;
+        }
+    }
+}
@@ -4,35 +4,106 @@ import net.minecraft.core.RegistryAccess;
 import net.minecraft.nbt.StringTag;
 import net.minecraft.nbt.Tag;
 
+import java.util.regex.Pattern;
+
 import javax.annotation.Nullable;
 
 public class StringValue extends Value
 {
     public static Value EMPTY = StringValue.of("");
 
-    private final String str;
+    // strings at least that long are concatenated by appending to a shared buffer instead of copying them
+    private static final int BUFFER_THRESHOLD = 256;
+
+    // null until the contents of a buffered string are needed
+    private String str;
+    /**
+     * Buffer holding contents of this string as its first {@link #length} characters. Strings made by concatenating
+     * a buffered string, when that string ends the buffer, append to the same buffer, so building a string piece
+     * by piece doesn't copy it over and over again.
+     */
+    @Nullable
+    private final StringBuilder buffer;
+    private final int length;
+    // compiled ahead of time for literals used as patterns, see PatternCache
+    @Nullable
+    Pattern pattern;
 
     @Override
     public String getString()
     {
-        return str;
+        String string = str;
+        if (string == null && buffer != null)
+        {
+            synchronized (buffer)
+            {
+                string = buffer.substring(0, length);
+            }
+            str = string;
+        }
+        return string;
     }
 
     @Override
     public boolean getBoolean()
     {
-        return str != null && !str.isEmpty();
+        return buffer != null ? length > 0 : str != null && !str.isEmpty();
+    }
+
+    @Override
+    public int length()
+    {
+        return buffer != null ? length : super.length();
+    }
+
+    @Override
+    public Value add(Value o)
+    {
+        if (getClass() != StringValue.class || o instanceof FormattedTextValue)
+        {
+            return super.add(o);
+        }
+        if (buffer == null && str.length() < BUFFER_THRESHOLD)
+        {
+            return super.add(o);
+        }
+        String right = o.getString();
+        if (buffer != null)
+        {
+            synchronized (buffer)
+            {
+                if (buffer.length() == length)
+                {
+                    buffer.append(right);
+                    return new StringValue(buffer, buffer.length(), null);
+                }
+            }
+        }
+        // another string was already made by appending to this one, so this one needs its own buffer
+        String left = getString();
+        StringBuilder appended = new StringBuilder(Math.max(2 * (left.length() + right.length()), BUFFER_THRESHOLD));
+        appended.append(left).append(right);
+        return new StringValue(appended, appended.length(), null);
     }
 
     @Override
     public Value clone()
     {
-        return new StringValue(str);
+        return buffer != null ? new StringValue(buffer, length, str) : new StringValue(str);
     }
 
     public StringValue(String str)
     {
         this.str = str;
+        this.buffer = null;
+        this.length = 0;
+    }
+
+    private StringValue(StringBuilder buffer, int length, @Nullable String str)
+    {
+        this.str = str;
+        this.buffer = buffer;
+        this.length = length;
     }
 
     public static Value of(@Nullable String value)
@@ -49,6 +120,6 @@ public class StringValue extends Value
     @Override
     public Tag toTag(boolean force, RegistryAccess regs)
     {
-        return StringTag.valueOf(str);
+        return StringTag.valueOf(getString());
     }
 }
@@ -146,7 +146,7 @@ public abstract class Value implements Comparable<Value>, Cloneable
         Pattern p;
         try
         {
-            p = Pattern.compile(value1.getString());
+            p = PatternCache.get(value1);
         }
         catch (PatternSyntaxException pse)
         {
@@ -204,7 +204,7 @@ public abstract class Value implements Comparable<Value>, Cloneable
         }
         try
         {
-            return ListValue.wrap(Arrays.stream(getString().split(delimiter.getString())).map(StringValue::new));
+            return ListValue.wrap(Arrays.stream(PatternCache.get(delimiter).split(getString())).map(StringValue::new));
         }
         catch (PatternSyntaxException pse)
         {
@@ -66,12 +66,12 @@ public class ValueConversions
 {
     public static Value of(BlockPos pos)
     {
-        return ListValue.of(new NumericValue(pos.getX()), new NumericValue(pos.getY()), new NumericValue(pos.getZ()));
+        return ListValue.ofLongs(pos.getX(), pos.getY(), pos.getZ());
     }
 
     public static Value of(Vec3 vec)
     {
-        return ListValue.of(new NumericValue(vec.x), new NumericValue(vec.y), new NumericValue(vec.z));
+        return ListValue.ofDoubles(vec.x, vec.y, vec.z);
     }
 
     public static Value of(ColumnPos cpos)
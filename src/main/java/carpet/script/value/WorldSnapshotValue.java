@@ -0,0 +1,194 @@
+package carpet.script.value;
+
+import carpet.script.exception.InternalExpressionException;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.core.Holder;
+import net.minecraft.core.QuartPos;
+import net.minecraft.core.RegistryAccess;
+import net.minecraft.core.SectionPos;
+import net.minecraft.nbt.StringTag;
+import net.minecraft.nbt.Tag;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.biome.Biome;
+import net.minecraft.world.level.block.Blocks;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.levelgen.Heightmap;
+
+/**
+ * Copy of block states, biomes and heightmaps of a range of chunks, taken on the main thread, which other threads
+ * can then read without racing with changes to the world. Sections are copied with their palettes, so a snapshot
+ * takes about as much memory as the chunks do when they are sent to clients.
+ */
+public class WorldSnapshotValue extends Value
+{
+    private static final Heightmap.Types[] HEIGHTMAPS = {
+            Heightmap.Types.MOTION_BLOCKING, Heightmap.Types.MOTION_BLOCKING_NO_LEAVES, Heightmap.Types.OCEAN_FLOOR, Heightmap.Types.WORLD_SURFACE
+    };
+
+    private record ChunkSnapshot(LevelChunkSection[] sections, Map<Heightmap.Types, int[]> heights)
+    {
+    }
+
+    private final String dimension;
+    private final int minChunkX;
+    private final int minChunkZ;
+    private final int sizeX;
+    private final int sizeZ;
+    private final int minSectionY;
+    private final ChunkSnapshot[] chunks;
+    private final long memory;
+
+    private WorldSnapshotValue(String dimension, int minChunkX, int minChunkZ, int sizeX, int sizeZ, int minSectionY, ChunkSnapshot[] chunks, long memory)
+    {
+        this.dimension = dimension;
+        this.minChunkX = minChunkX;
+        this.minChunkZ = minChunkZ;
+        this.sizeX = sizeX;
+        this.sizeZ = sizeZ;
+        this.minSectionY = minSectionY;
+        this.chunks = chunks;
+        this.memory = memory;
+    }
+
+    /**
+     * Copies chunks between two block positions. Needs to be called on the main thread.
+     */
+    public static WorldSnapshotValue capture(ServerLevel world, BlockPos from, BlockPos to)
+    {
+        int minChunkX = SectionPos.blockToSectionCoord(Math.min(from.getX(), to.getX()));
+        int minChunkZ = SectionPos.blockToSectionCoord(Math.min(from.getZ(), to.getZ()));
+        int sizeX = SectionPos.blockToSectionCoord(Math.max(from.getX(), to.getX())) - minChunkX + 1;
+        int sizeZ = SectionPos.blockToSectionCoord(Math.max(from.getZ(), to.getZ())) - minChunkZ + 1;
+        ChunkSnapshot[] chunks = new ChunkSnapshot[sizeX * sizeZ];
+        long memory = 0;
+        for (int dx = 0; dx < sizeX; dx++)
+        {
+            for (int dz = 0; dz < sizeZ; dz++)
+            {
+                LevelChunk chunk = world.getChunk(minChunkX + dx, minChunkZ + dz);
+                LevelChunkSection[] sections = chunk.getSections().clone();
+                for (int i = 0; i < sections.length; i++)
+                {
+                    sections[i] = sections[i].copy();
+                    memory += sections[i].getSerializedSize();
+                }
+                Map<Heightmap.Types, int[]> heights = new EnumMap<>(Heightmap.Types.class);
+                for (Heightmap.Types type : HEIGHTMAPS)
+                {
+                    int[] column = new int[256];
+                    for (int i = 0; i < 256; i++)
+                    {
+                        column[i] = chunk.getHeight(type, i & 15, i >> 4);
+                    }
+                    heights.put(type, column);
+                    memory += 4L * column.length;
+                }
+                chunks[dx * sizeZ + dz] = new ChunkSnapshot(sections, heights);
+            }
+        }
+        return new WorldSnapshotValue(ValueConversions.of(world).getString(), minChunkX, minChunkZ, sizeX, sizeZ, world.getMinSectionY(), chunks, memory);
+    }
+
+    private ChunkSnapshot chunkAt(int x, int z)
+    {
+        int dx = SectionPos.blockToSectionCoord(x) - minChunkX;
+        int dz = SectionPos.blockToSectionCoord(z) - minChunkZ;
+        if (dx < 0 || dx >= sizeX || dz < 0 || dz >= sizeZ)
+        {
+            throw new InternalExpressionException("Position " + x + ", " + z + " is outside of the snapshot");
+        }
+        return chunks[dx * sizeZ + dz];
+    }
+
+    public BlockState getBlockState(BlockPos pos)
+    {
+        LevelChunkSection[] sections = chunkAt(pos.getX(), pos.getZ()).sections();
+        int index = SectionPos.blockToSectionCoord(pos.getY()) - minSectionY;
+        if (index < 0 || index >= sections.length)
+        {
+            return Blocks.VOID_AIR.defaultBlockState();
+        }
+        return sections[index].getBlockState(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15);
+    }
+
+    public Holder<Biome> getBiome(BlockPos pos)
+    {
+        LevelChunkSection[] sections = chunkAt(pos.getX(), pos.getZ()).sections();
+        // like in the world, biomes above and below are the ones at the edge of it
+        int index = Math.clamp(SectionPos.blockToSectionCoord(pos.getY()) - minSectionY, 0, sections.length - 1);
+        int y = Math.clamp(pos.getY(), SectionPos.sectionToBlockCoord(minSectionY + index), SectionPos.sectionToBlockCoord(minSectionY + index, 15));
+        return sections[index].getNoiseBiome(QuartPos.fromBlock(pos.getX()) & 3, QuartPos.fromBlock(y) & 3, QuartPos.fromBlock(pos.getZ()) & 3);
+    }
+
+    /**
+     * @return same as {@link LevelChunk#getHeight(Heightmap.Types, int, int)} at the time of the snapshot
+     */
+    public int getHeight(Heightmap.Types type, int x, int z)
+    {
+        int[] heights = chunkAt(x, z).heights().get(type);
+        if (heights == null)
+        {
+            throw new InternalExpressionException("Snapshots don't have " + type.getSerializationKey() + " heightmaps");
+        }
+        return heights[(x & 15) + 16 * (z & 15)];
+    }
+
+    public Value info()
+    {
+        Map<Value, Value> info = new HashMap<>();
+        info.put(StringValue.of("dimension"), StringValue.of(dimension));
+        info.put(StringValue.of("from"), ListValue.of(new NumericValue(SectionPos.sectionToBlockCoord(minChunkX)), new NumericValue(SectionPos.sectionToBlockCoord(minChunkZ))));
+        info.put(StringValue.of("to"), ListValue.of(new NumericValue(SectionPos.sectionToBlockCoord(minChunkX + sizeX - 1, 15)), new NumericValue(SectionPos.sectionToBlockCoord(minChunkZ + sizeZ - 1, 15))));
+        info.put(StringValue.of("chunks"), new NumericValue(chunks.length));
+        info.put(StringValue.of("memory"), new NumericValue(memory));
+        return MapValue.wrap(info);
+    }
+
+    @Override
+    public String getString()
+    {
+        return String.format(Locale.ROOT, "snapshot[%s, chunks %d, %d to %d, %d]", dimension, minChunkX, minChunkZ, minChunkX + sizeX - 1, minChunkZ + sizeZ - 1);
+    }
+
+    @Override
+    public boolean getBoolean()
+    {
+        return true;
+    }
+
+    @Override
+    public String getTypeString()
+    {
+        return "snapshot";
+    }
+
+    @Override
+    public int hashCode()
+    {
+        return System.identityHashCode(this);
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        return o == this;
+    }
+
+    @Override
+    public Tag toTag(boolean force, RegistryAccess regs)
+    {
+        if (!force)
+        {
+            throw new NBTSerializableValue.IncompatibleTypeException(this);
+        }
+        return StringTag.valueOf(getString());
+    }
+}